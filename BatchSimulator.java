@@ -0,0 +1,407 @@
+// BatchSimulator.java
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/** Main program for simulating many circuits in one run.
+ *  <p>
+ *  Each job is one netlist, or one set of stimuli applied to a shared
+ *  netlist, and is simulated in a SimulationContext of its own.  Jobs run
+ *  on a fixed pool of threads, and later jobs reuse the code the JIT
+ *  compiled for earlier ones.  Each job writes its trace and any error
+ *  messages to files of its own, and the run ends with a summary.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see LogicSimulator
+ *  @see SimulationContext
+ */
+public class BatchSimulator {
+
+    // One netlist, or one stimulus file, to simulate
+    private static class Job {
+        final String name;   // unique among the jobs, names the output files
+        final Path source;   // the netlist or stimulus file
+        String status = "failed";
+        int warnings = 0;
+        long millis = 0;
+
+        Job( String n, Path s ) {
+            name = n;
+            source = s;
+        }
+    }
+
+    // Where problems with the batch itself are reported
+    private final Errors errors = new Errors( "Batchsim" );
+
+    // Settings from the command line that apply to every job
+    private Supplier <EventSet> newEventSet = HeapEventSet::new;
+    private String format = "text";
+    private String traceList = null;
+    private boolean outputsOnly = false;
+    private Path outDir = Paths.get( "batch" );
+
+    // The shared netlist when the jobs are stimulus files, otherwise null
+    private byte[] circuit = null;
+
+    // The jobs, in the order they were named, and the names they use
+    private final List <Job> jobs = new ArrayList <> ();
+    private final HashSet <String> names = new HashSet <> ();
+
+    // Manifests being read, to catch manifests that name themselves
+    private final HashSet <Path> manifests = new HashSet <> ();
+
+    // Add a job for a file, with a name not used by any earlier job
+    private void addJob( Path file ) {
+        final String base = file.getFileName().toString();
+        String name = base;
+        for (int i = 2; !names.add( name ); i++) name = base + "-" + i;
+        jobs.add( new Job( name, file ) );
+    }
+
+    // Add the jobs named by a file, a directory, a glob or an @manifest
+    private void addSource( String source ) {
+        if (source.startsWith( "@" )) {
+            addManifest( Paths.get( source.substring( 1 ) ) );
+        } else if (isGlob( source )) {
+            addGlob( source );
+        } else {
+            final Path p = Paths.get( source );
+            if (Files.isDirectory( p )) {
+                addDirectory( p );
+            } else if (Files.isRegularFile( p )) {
+                addJob( p );
+            } else {
+                errors.warn( "Source " + source + ": not found" );
+            }
+        }
+    }
+
+    // Add each line of a manifest as a source, relative to the manifest
+    private void addManifest( Path manifest ) {
+        final Path key = manifest.toAbsolutePath().normalize();
+        if (!manifests.add( key )) {
+            errors.warn( "Manifest " + manifest + ": includes itself" );
+            return;
+        }
+        try {
+            final Path dir = manifest.getParent();
+            for (String line: Files.readAllLines( manifest )) {
+                final int comment = line.indexOf( "--" );
+                if (comment >= 0) line = line.substring( 0, comment );
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                final boolean nested = line.startsWith( "@" );
+                String source = nested ? line.substring( 1 ) : line;
+                if ((dir != null) && !Paths.get( source ).isAbsolute()) {
+                    source = dir.resolve( source ).toString();
+                }
+                addSource( nested ? "@" + source : source );
+            }
+        } catch( IOException e ) {
+            errors.warn( "Manifest " + manifest + ": can't be read" );
+        }
+        manifests.remove( key );
+    }
+
+    // Add the regular files in a directory, in order by name
+    private void addDirectory( Path dir ) {
+        final List <Path> files = new ArrayList <> ();
+        try (DirectoryStream <Path> s = Files.newDirectoryStream( dir )) {
+            for (Path p: s) if (Files.isRegularFile( p )) files.add( p );
+        } catch( IOException e ) {
+            errors.warn( "Directory " + dir + ": can't be read" );
+        }
+        Collections.sort( files );
+        for (Path p: files) addJob( p );
+    }
+
+    // Add the regular files matching a glob such as tests/*/net*.txt
+    private void addGlob( String glob ) {
+        // Walk from the longest leading directory free of wildcards
+        final int slash = glob.lastIndexOf( '/', firstWildcard( glob ) );
+        final Path base
+            = Paths.get( (slash < 0) ? "" : glob.substring( 0, slash + 1 ) );
+        final PathMatcher matcher
+            = FileSystems.getDefault().getPathMatcher( "glob:" + glob );
+        final List <Path> files = new ArrayList <> ();
+        try (Stream <Path> s = Files.walk( base )) {
+            s.filter( p -> Files.isRegularFile( p ) && matcher.matches( p ) )
+                .forEach( files::add );
+        } catch( IOException e ) {
+            errors.warn( "Source " + glob + ": can't be read" );
+        }
+        if (files.isEmpty()) errors.warn( "Source " + glob + ": no matches" );
+        Collections.sort( files );
+        for (Path p: files) addJob( p );
+    }
+
+    // Test for wildcards, and find the first
+    private static boolean isGlob( String s ) {
+        return firstWildcard( s ) < s.length();
+    }
+
+    private static int firstWildcard( String s ) {
+        for (int i = 0; i < s.length(); i++) {
+            if ("*?[{".indexOf( s.charAt( i ) ) >= 0) return i;
+        }
+        return s.length();
+    }
+
+    // Apply a stimulus file, lines like gate a input 1 1.0 2, to a circuit
+    private static void restimulate( SimulationContext ctx, ByteScanner sc ) {
+        while (sc.hasNext()) {
+            final String command = sc.next();
+            ctx.errors.setLine( sc.line() );
+            if ("--".equals( command )) {
+                sc.restOfLine();
+            } else if ("gate".equals( command )) {
+                final String name
+                    = ScanSupport.scanName( sc, () -> "Gate has no name" );
+                final Gate g = ctx.findGate( name );
+                if (name == null) {
+                    sc.restOfLine();
+                } else if (!(g instanceof InputGate)) {
+                    ctx.errors.warn( "Gate " + name + ": not an input gate" );
+                    sc.restOfLine();
+                } else if (!sc.hasNext() || !"input".equals( sc.next() )) {
+                    ctx.errors.warn( "Gate " + name + ": input expected" );
+                    sc.restOfLine();
+                } else {
+                    ((InputGate)g).restimulate( sc );
+                }
+            } else {
+                ctx.errors.warn( "Invalid stimulus " + command );
+                ScanSupport.finishLine( sc, () -> command + ": followed by" );
+            }
+        }
+        ctx.errors.setLine( 0 );
+    }
+
+    // Simulate one job, setting its status, warnings and time
+    private void run( Job job ) {
+        final long start = System.nanoTime();
+        final ByteArrayOutputStream log = new ByteArrayOutputStream();
+        final PrintStream err = new PrintStream( log, true );
+        final SimulationContext ctx = new SimulationContext( job.name, err );
+        try {
+            // The file is closed before simulating, so a batch holds at
+            // most one open per job running
+            try (ByteScanner sc
+                = new ByteScanner( job.source.toString(), ctx.errors )
+            ) {
+                if (circuit == null) {
+                    LogicSimulator.buildLogic( ctx, sc );
+                } else {
+                    LogicSimulator.buildLogic( ctx, new ByteScanner(
+                        Channels.newChannel(
+                            new ByteArrayInputStream( circuit )
+                        ),
+                        ctx.errors
+                    ) );
+                    restimulate( ctx, sc );
+                }
+            }
+            if (traceList != null) LogicSimulator.addProbes( ctx, traceList );
+            LogicSimulator.sanityChecks( ctx );
+            if (ctx.errors.warnings() > 0) {
+                LogicSimulator.printLogic( ctx, err );
+                job.status = "rejected";
+            } else {
+                simulate( ctx, job );
+                job.status = "ok";
+            }
+        } catch( FileNotFoundException e ) {
+            ctx.errors.warn( "Can't open the file" );
+        } catch( Errors.FatalError e ) {
+            // Already reported
+        } catch( IOException | RuntimeException e ) {
+            ctx.errors.warn( "Failed: " + e );
+        }
+        job.warnings = ctx.errors.warnings();
+        if (log.size() > 0) {
+            try {
+                Files.write( outDir.resolve( job.name + ".log" ),
+                    log.toByteArray() );
+            } catch( IOException e ) {
+                job.status = "failed";
+            }
+        }
+        job.millis = (System.nanoTime() - start) / 1000000;
+    }
+
+    // Simulate a context that passed its checks, tracing to the job's file
+    private void simulate(
+        SimulationContext ctx, Job job
+    ) throws IOException {
+        final Netlist net = ctx.compile();
+        if ("none".equals( format )) {
+            net.setTrace( TraceSink.NULL );
+            runNetlist( ctx, net );
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(
+            outDir.resolve( job.name + ".trace" ).toFile()
+        )) {
+            final TraceSink trace
+                = LogicSimulator.makeTrace( format, out, net );
+            net.setTrace( trace );
+            try {
+                runNetlist( ctx, net );
+            } finally {
+                // After a fatal error, the trace up to it is kept
+                trace.close();
+            }
+        }
+    }
+
+    // Run the simulation of a compiled context
+    private void runNetlist( SimulationContext ctx, Netlist net ) {
+        LogicSimulator.selectTrace( ctx, outputsOnly );
+        ctx.simulation.setEventSet( newEventSet.get() );
+        net.launch( ctx.simulation );
+        ctx.simulation.run();
+    }
+
+    // Run all the jobs on a pool of threads, then write the summary
+    private boolean runAll( int threads ) throws IOException {
+        Files.createDirectories( outDir );
+        final long start = System.nanoTime();
+        final ExecutorService pool = Executors.newFixedThreadPool( threads );
+        final List <Callable <Object>> tasks = new ArrayList <> ();
+        for (Job j: jobs) tasks.add( Executors.callable( () -> run( j ) ) );
+        try {
+            pool.invokeAll( tasks );
+        } catch( InterruptedException e ) {
+            errors.fatal( "Interrupted" );
+        } finally {
+            pool.shutdown();
+        }
+        final long millis = (System.nanoTime() - start) / 1000000;
+
+        // Write the summary to the screen and to a file
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream summary = new PrintStream( bytes );
+        int width = 3;
+        for (Job j: jobs) width = Math.max( width, j.name.length() );
+        final String row = "%-" + width + "s  %-8s  %8s  %8s%n";
+        summary.printf( row, "job", "status", "warnings", "ms" );
+        int ok = 0;
+        int rejected = 0;
+        long busy = 0;
+        for (Job j: jobs) {
+            summary.printf( row, j.name, j.status, j.warnings, j.millis );
+            if ("ok".equals( j.status )) ok = ok + 1;
+            if ("rejected".equals( j.status )) rejected = rejected + 1;
+            busy = busy + j.millis;
+        }
+        summary.printf( "%d jobs: %d ok, %d rejected, %d failed"
+            + " in %d ms on %d threads, %d ms of simulation%n",
+            jobs.size(), ok, rejected, jobs.size() - ok - rejected,
+            millis, threads, busy
+        );
+        summary.flush();
+        System.out.write( bytes.toByteArray() );
+        System.out.flush();
+        Files.write( outDir.resolve( "summary" ), bytes.toByteArray() );
+        return ok == jobs.size();
+    }
+
+    /** Main method.
+     *  <p>
+     *  Usage: java BatchSimulator [options] source ...
+     *  where each source is a netlist, a directory of netlists, a glob such
+     *  as nets/*.txt, or @file naming a manifest with one source per line.
+     *  With -circuit netlist, the sources are instead stimulus files,
+     *  each holding input gate lines that replace those in the netlist.
+     *  @param args the command line arguments
+     */
+    public static void main( String[] args ) {
+        try {
+            System.exit( batch( args ) ? 0 : 1 );
+        } catch( Errors.FatalError e ) {
+            System.exit( 1 );
+        }
+    }
+
+    // Run the batch described by the command line arguments
+    private static boolean batch( String[] args ) {
+        final BatchSimulator b = new BatchSimulator();
+        final Errors errors = b.errors;
+        final List <String> sources = new ArrayList <> ();
+        String circuitName = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if ("-jobs".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                try {
+                    threads = Integer.parseInt( args[i] );
+                } catch( NumberFormatException e ) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    errors.fatal( "Jobs " + args[i] + ": must be positive" );
+                }
+            } else if ("-d".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                b.outDir = Paths.get( args[i] );
+            } else if ("-circuit".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                circuitName = args[i];
+            } else if ("-queue".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                b.newEventSet = LogicSimulator.eventSets( errors, args[i] );
+            } else if ("-format".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                b.format = args[i];
+                if (!LogicSimulator.isTraceFormat( b.format )) {
+                    errors.fatal( "Trace format " + b.format + ": unknown" );
+                }
+            } else if ("-trace".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                b.traceList = args[i];
+            } else if ("-outputs".equals( args[i] )) {
+                b.outputsOnly = true;
+            } else {
+                sources.add( args[i] );
+            }
+        }
+        if (sources.isEmpty()) errors.fatal( "Missing argument" );
+        if (circuitName != null) {
+            try {
+                b.circuit = Files.readAllBytes( Paths.get( circuitName ) );
+            } catch( IOException e ) {
+                errors.fatal( "Can't open the file " + circuitName );
+            }
+        }
+        for (String s: sources) b.addSource( s );
+        if (b.jobs.isEmpty()) errors.fatal( "No jobs" );
+        try {
+            return b.runAll( threads ) && (errors.warnings() == 0);
+        } catch( IOException e ) {
+            errors.fatal( "Can't write to " + b.outDir );
+            return false;
+        }
+    }
+}
@@ -0,0 +1,517 @@
+// Benchmark.java
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Micro and macro benchmarks of the simulator.
+ *  <p>
+ *  The event kernel is measured with the classic hold model at several
+ *  queue depths and with events posted from other threads, gate
+ *  evaluation by feeding input changes straight to a netlist, the parser
+ *  by building generated netlists, the whole simulator in events per
+ *  second on synthetic circuits, and cycle simulation in input vectors
+ *  per second.  Each benchmark runs warm-up iterations before the
+ *  measured ones, and each iteration starts from fresh state, made outside
+ *  the timed region.  Results can be written as JSON and compared against
+ *  an earlier run.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Simulation
+ *  @see Netlist
+ *  @see LogicSimulator
+ */
+public class Benchmark {
+
+    // One timed run of a benchmark, returning how many operations it did
+    private interface Trial {
+        long run();
+    }
+
+    // A benchmark: a name, the unit of its score and a maker of trials
+    private static class Case {
+        final String name;
+        final String unit;
+        final Supplier <Trial> prepare;
+
+        Case( String n, String u, Supplier <Trial> p ) {
+            name = n;
+            unit = u;
+            prepare = p;
+        }
+    }
+
+    // The outcome of a benchmark, in operations per second
+    private static class Result {
+        final Case c;
+        final double score;  // the mean
+        final double error;  // the standard deviation
+        final double min;
+        final double max;
+        final int iterations;
+
+        Result( Case c, double[] rates ) {
+            this.c = c;
+            iterations = rates.length;
+            double sum = 0;
+            double lo = Double.MAX_VALUE;
+            double hi = 0;
+            for (double r: rates) {
+                sum = sum + r;
+                lo = Math.min( lo, r );
+                hi = Math.max( hi, r );
+            }
+            score = sum / iterations;
+            double squares = 0;
+            for (double r: rates) squares = squares + (r - score) * (r - score);
+            error = (iterations > 1) ? Math.sqrt( squares / (iterations - 1) )
+                : 0;
+            min = lo;
+            max = hi;
+        }
+    }
+
+    // Defeats dead code elimination of results nobody looks at
+    private static volatile long sink;
+
+    // Events past the initial ones in each hold model trial
+    private static final int HOLD_EVENTS = 1000000;
+
+    // Rounds of input changes in each gate evaluation trial
+    private static final int GATE_ROUNDS = 40;
+
+    // Random time increments for the hold model, in ticks, with mean 1000
+    private static final long[] STEPS = new long[4096];
+    static {
+        final Random r = new Random( 1 );
+        for (int i = 0; i < STEPS.length; i++) STEPS[i] = r.nextInt( 2001 );
+    }
+
+    // The hold model: each event schedules one more, until the total is met
+    private static class Hold
+        implements Simulation.Action, Simulation.Dispatcher
+    {
+        private final Simulation sim;
+        private long count = 0;
+
+        Hold( Simulation s ) {
+            sim = s;
+        }
+
+        public void trigger() {
+            count = count + 1;
+            if (count < HOLD_EVENTS) {
+                sim.schedule( STEPS[(int)count & 4095], this );
+            }
+        }
+
+        public void dispatch( int kind, int target, int value ) {
+            count = count + 1;
+            if (count < HOLD_EVENTS) {
+                sim.schedule( STEPS[(int)count & 4095], kind, target, value );
+            }
+        }
+    }
+
+    // A kernel trial, holding depth pending events, typed or actions
+    private static Trial hold(
+        Supplier <EventSet> makeSet, int depth, boolean typed
+    ) {
+        final Simulation s = new Simulation();
+        s.setEventSet( makeSet.get() );
+        final Hold h = new Hold( s );
+        s.setDispatcher( h );
+        for (int i = 0; i < depth; i++) {
+            if (typed) {
+                s.schedule( STEPS[i & 4095], 0, i, 0 );
+            } else {
+                s.schedule( STEPS[i & 4095], h );
+            }
+        }
+        return () -> {
+            s.run();
+            return h.count;
+        };
+    }
+
+    // A kernel trial with typed events posted from other threads: each
+    // producer posts its share, yielding after each depth events, while the
+    // owner takes them in and runs them
+    private static Trial posted(
+        Supplier <EventSet> makeSet, int producers, int depth
+    ) {
+        final Simulation s = new Simulation();
+        s.setEventSet( makeSet.get() );
+        final long[] count = { 0 };
+        s.setDispatcher( (kind, target, value) -> {
+            count[0] = count[0] + 1;
+        } );
+        return () -> {
+            final int share = HOLD_EVENTS / producers;
+            for (int t = 0; t < producers; t++) {
+                s.addProducer();
+                new Thread( () -> {
+                    for (int i = 0; i < share; i++) {
+                        s.post( STEPS[i & 4095], 0, i, 0 );
+                        if (i % depth == depth - 1) {
+                            // Let the owner keep up, as a feeder would
+                            Thread.yield();
+                        }
+                    }
+                    s.removeProducer();
+                } ).start();
+            }
+            s.run();
+            return count[0];
+        };
+    }
+
+    // A process that counts what a netlist schedules, and drops it
+    private static class CountingProcess extends Netlist.Process {
+        long count = 0;
+
+        void schedule( long delay, int k, int target, int value ) {
+            count = count + 1;
+        }
+
+        void gateChange( int g, int value ) {}
+
+        void wireChange( int w, int value ) {}
+    }
+
+    // A gate evaluation trial: gates of one kind, each with some inputs
+    private static Trial gates( String kind, int inputs, int count ) {
+        final StringBuilder b = new StringBuilder();
+        b.append( "gate in input 0 1.0 0\n" );
+        for (int i = 0; i < count; i++) {
+            b.append( "gate g" ).append( name( i ) ).append( ' ' )
+                .append( kind ).append( " 1.0\n" );
+            for (int j = 0; j < inputs; j++) {
+                b.append( "wire in 1.0 g" ).append( name( i ) ).append( '\n' );
+            }
+        }
+        final Netlist net = build(
+            b.toString().getBytes( StandardCharsets.UTF_8 )
+        ).compile();
+        net.setTrace( TraceSink.NULL );
+        net.traceNone();
+        final CountingProcess p = new CountingProcess();
+        return () -> {
+            long n = 0;
+            for (int r = 0; r < GATE_ROUNDS; r++) {
+                // All the inputs rise, then all fall, so counts stay valid
+                for (int v = 1; v >= 0; v--) {
+                    for (int w = 0; w < net.wires; w++) {
+                        net.dispatch( p, Netlist.WIRE_OUTPUT, w, v );
+                    }
+                    net.settle( p );
+                    n = n + net.wires;
+                }
+            }
+            sink = p.count;
+            return n;
+        };
+    }
+
+    // A parser trial: build the circuit in a netlist, counting gates
+    private static Trial parse( byte[] bytes ) {
+        return () -> {
+            final SimulationContext ctx = new SimulationContext( "Benchmark" );
+            LogicSimulator.buildLogic( ctx, scanner( bytes, ctx.errors ) );
+            return ctx.gateCount();
+        };
+    }
+
+    // An end to end trial: simulate a circuit, counting the events
+    private static Trial simulate(
+        byte[] netlist, Supplier <EventSet> makeSet
+    ) {
+        final SimulationContext ctx = build( netlist );
+        LogicSimulator.sanityChecks( ctx );
+        if (ctx.errors.warnings() > 0) {
+            ctx.errors.fatal( "Benchmark circuit is faulty" );
+        }
+        final Netlist net = ctx.compile();
+        net.setTrace( TraceSink.NULL );
+        ctx.simulation.setEventSet( makeSet.get() );
+        net.launch( ctx.simulation );
+        final long[] events = { 0 };
+        ctx.simulation.setDispatcher( ( k, target, value ) -> {
+            events[0] = events[0] + 1;
+            net.dispatch( k, target, value );
+        } );
+        return () -> {
+            ctx.simulation.run();
+            return events[0];
+        };
+    }
+
+    // A cycle simulation trial: random input vectors, 64 at a time
+    private static Trial cycles( byte[] netlist, int words ) {
+        final SimulationContext ctx = build( netlist );
+        final CycleSimulation c = new CycleSimulation( ctx.compile() );
+        final long[] lanes = new long[c.inputCount()];
+        final Random random = new Random( 1 );
+        return () -> {
+            long s = 0;
+            for (int n = 0; n < words; n++) {
+                for (int i = 0; i < lanes.length; i++) {
+                    lanes[i] = random.nextLong();
+                }
+                c.evaluate( lanes );
+                s = s ^ c.output( 0 );
+            }
+            sink = s;
+            return 64L * words;
+        };
+    }
+
+    // Build a circuit from netlist text
+    private static SimulationContext build( byte[] netlist ) {
+        final SimulationContext ctx = new SimulationContext( "Benchmark" );
+        LogicSimulator.buildLogic( ctx, scanner( netlist, ctx.errors ) );
+        return ctx;
+    }
+
+    private static ByteScanner scanner( byte[] bytes, Errors errors ) {
+        return new ByteScanner( Channels.newChannel(
+            new ByteArrayInputStream( bytes )
+        ), errors );
+    }
+
+    // Gate names are letters with at most one trailing digit, so base 26
+    private static String name( int i ) {
+        final StringBuilder b = new StringBuilder();
+        do {
+            b.append( (char)('a' + i % 26) );
+            i = i / 26;
+        } while (i > 0);
+        return b.reverse().toString();
+    }
+
+    // All the benchmarks, in the order they run
+    private static List <Case> cases() {
+        final List <Case> cases = new ArrayList <> ();
+        final String[] queues = { "heap", "calendar" };
+        final Errors errors = new Errors( "Benchmark" );
+        for (String q: queues) {
+            final Supplier <EventSet> makeSet
+                = LogicSimulator.eventSets( errors, q );
+            for (int depth: new int[] { 16, 1024, 65536 }) {
+                cases.add( new Case( "kernel.typed." + q + "." + depth,
+                    "events/s", () -> hold( makeSet, depth, true ) ) );
+            }
+            cases.add( new Case( "kernel.action." + q + ".1024",
+                "events/s", () -> hold( makeSet, 1024, false ) ) );
+            cases.add( new Case( "kernel.posted." + q + ".4",
+                "events/s", () -> posted( makeSet, 4, 1024 ) ) );
+        }
+        cases.add( new Case( "gate.xor", "evaluations/s",
+            () -> gates( "xor", 2, 10000 ) ) );
+        cases.add( new Case( "gate.threshold", "evaluations/s",
+            () -> gates( "threshold 2", 4, 5000 ) ) );
+        final byte[] random = CircuitGenerator.generate(
+            "-size", "100000", "-inputs", "100", "random"
+        );
+        final byte[] adder = CircuitGenerator.generate(
+            "-size", "15000", "adder"
+        );
+        cases.add( new Case( "parse.random", "gates/s",
+            () -> parse( random ) ) );
+        cases.add( new Case( "parse.adder", "gates/s",
+            () -> parse( adder ) ) );
+        final byte[][] circuits = {
+            CircuitGenerator.generate( "-size", "2000", "-toggles", "20",
+                "adder" ),
+            CircuitGenerator.generate( "-size", "32", "-toggles", "10",
+                "multiplier" ),
+            CircuitGenerator.generate( "-size", "2000", "-toggles", "40",
+                "-period", "2.0", "ripple" ),
+            CircuitGenerator.generate( "-size", "20000", "-inputs", "200",
+                "-toggles", "10", "random" ),
+            CircuitGenerator.generate( "-size", "25", "-copies", "200",
+                "-run", "200", "ring" )
+        };
+        final String[] names = { "adder", "multiplier", "ripple", "random",
+            "ring" };
+        for (String q: queues) {
+            final Supplier <EventSet> makeSet
+                = LogicSimulator.eventSets( errors, q );
+            for (int i = 0; i < circuits.length; i++) {
+                final byte[] circuit = circuits[i];
+                cases.add( new Case( "sim." + names[i] + "." + q, "events/s",
+                    () -> simulate( circuit, makeSet ) ) );
+            }
+        }
+        cases.add( new Case( "cycle.multiplier", "vectors/s",
+            () -> cycles( circuits[1], 2000 ) ) );
+        return cases;
+    }
+
+    // Run one benchmark, returning the rates of the measured iterations
+    private static double[] measure( Case c, int warmup, int iterations ) {
+        final double[] rates = new double[iterations];
+        for (int i = -warmup; i < iterations; i++) {
+            final Trial t = c.prepare.get();
+            final long start = System.nanoTime();
+            final long ops = t.run();
+            final long nanos = System.nanoTime() - start;
+            sink = ops;
+            if (i >= 0) rates[i] = ops * 1e9 / Math.max( nanos, 1 );
+        }
+        return rates;
+    }
+
+    // Format a number for JSON, independent of the locale
+    private static String number( double d ) {
+        return String.format( Locale.ROOT, "%.1f", d );
+    }
+
+    // Write the results as JSON, one result per line
+    private static void writeJson(
+        List <Result> results, PrintStream out, int warmup
+    ) {
+        out.println( "{" );
+        out.println( "  \"java\": \"" + System.getProperty( "java.version" )
+            + "\"," );
+        out.println( "  \"processors\": "
+            + Runtime.getRuntime().availableProcessors() + "," );
+        out.println( "  \"warmup\": " + warmup + "," );
+        out.println( "  \"results\": [" );
+        for (int i = 0; i < results.size(); i++) {
+            final Result r = results.get( i );
+            out.println( "    {\"name\": \"" + r.c.name + "\", \"unit\": \""
+                + r.c.unit + "\", \"score\": " + number( r.score )
+                + ", \"error\": " + number( r.error )
+                + ", \"min\": " + number( r.min )
+                + ", \"max\": " + number( r.max )
+                + ", \"iterations\": " + r.iterations + "}"
+                + ((i + 1 < results.size()) ? "," : "") );
+        }
+        out.println( "  ]" );
+        out.println( "}" );
+    }
+
+    // Read the scores from JSON written by writeJson
+    private static HashMap <String, Double> readJson(
+        String fileName, Errors errors
+    ) {
+        final HashMap <String, Double> scores = new HashMap <> ();
+        final Pattern p = Pattern.compile(
+            "\"name\": \"([^\"]*)\".*\"score\": ([0-9.eE+-]+)"
+        );
+        try {
+            for (String line: Files.readAllLines( Paths.get( fileName ) )) {
+                final Matcher m = p.matcher( line );
+                if (m.find()) {
+                    scores.put( m.group( 1 ), Double.valueOf( m.group( 2 ) ) );
+                }
+            }
+        } catch( IOException e ) {
+            errors.fatal( "Can't read the baseline " + fileName );
+        }
+        return scores;
+    }
+
+    /** Main method.
+     *  <p>
+     *  Usage: java Benchmark [options]
+     *  with -filter s to run only the benchmarks whose names contain s,
+     *  -warmup n and -iterations n to set the number of iterations,
+     *  -json file to write the results as JSON, and -baseline file to
+     *  compare against JSON from an earlier run, failing if any score
+     *  drops by more than the -threshold percentage, 10 by default.
+     *  @param args the command line arguments
+     */
+    public static void main( String[] args ) {
+        try {
+            System.exit( benchmark( args ) ? 0 : 1 );
+        } catch( Errors.FatalError e ) {
+            System.exit( 1 );
+        }
+    }
+
+    // Run the benchmarks, false if any regressed
+    private static boolean benchmark( String[] args ) {
+        final Errors errors = new Errors( "Benchmark" );
+        String filter = "";
+        String jsonName = null;
+        String baselineName = null;
+        int warmup = 3;
+        int iterations = 5;
+        double threshold = 10;
+        for (int i = 0; i < args.length; i++) {
+            final boolean more = i + 1 < args.length;
+            try {
+                if ("-filter".equals( args[i] ) && more) {
+                    filter = args[++i];
+                } else if ("-warmup".equals( args[i] ) && more) {
+                    warmup = Integer.parseInt( args[++i] );
+                } else if ("-iterations".equals( args[i] ) && more) {
+                    iterations = Integer.parseInt( args[++i] );
+                } else if ("-json".equals( args[i] ) && more) {
+                    jsonName = args[++i];
+                } else if ("-baseline".equals( args[i] ) && more) {
+                    baselineName = args[++i];
+                } else if ("-threshold".equals( args[i] ) && more) {
+                    threshold = Double.parseDouble( args[++i] );
+                } else {
+                    errors.fatal( "Option " + args[i] + ": unknown" );
+                }
+            } catch( NumberFormatException e ) {
+                errors.fatal( "Option " + args[i - 1] + ": number expected" );
+            }
+        }
+        if ((warmup < 0) || (iterations < 1)) {
+            errors.fatal( "Iterations must be positive" );
+        }
+        final HashMap <String, Double> baseline = (baselineName == null)
+            ? new HashMap <> () : readJson( baselineName, errors );
+
+        final List <Result> results = new ArrayList <> ();
+        boolean regressed = false;
+        System.out.printf( "%-28s %14s %12s %9s  %s%n",
+            "benchmark", "score", "error", "change", "unit" );
+        for (Case c: cases()) {
+            if (!c.name.contains( filter )) continue;
+            final Result r = new Result( c, measure( c, warmup, iterations ) );
+            results.add( r );
+            String change = "";
+            final Double old = baseline.get( c.name );
+            if (old != null) {
+                final double pct = (r.score - old) * 100 / old;
+                change = String.format( "%+.1f%%", pct );
+                if (pct < -threshold) {
+                    change = change + " !";
+                    regressed = true;
+                }
+            }
+            System.out.printf( "%-28s %14.0f %12.0f %9s  %s%n",
+                c.name, r.score, r.error, change, c.unit );
+        }
+        if (jsonName != null) {
+            try (PrintStream out = new PrintStream( jsonName )) {
+                writeJson( results, out, warmup );
+            } catch( IOException e ) {
+                errors.fatal( "Can't write " + jsonName );
+            }
+        }
+        if (regressed) {
+            errors.warn( "Scores marked ! dropped more than " + threshold
+                + "% below the baseline" );
+        }
+        return !regressed;
+    }
+}
@@ -0,0 +1,121 @@
+// BinaryTrace.java
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/** Trace sink that writes a compact binary trace.
+ *  <p>
+ *  The trace starts with a header holding the netlist, so that it can be
+ *  decoded on its own, followed by one fixed size record per change.  Use
+ *  TraceDecoder to turn it back into the text trace.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see TraceSink
+ *  @see TraceDecoder
+ */
+public class BinaryTrace extends TraceSink {
+
+    /** The first int of every binary trace, "LSTR".
+     */
+    public static final int MAGIC = 0x4C535452;
+
+    /** The version of the format.
+     */
+    public static final int VERSION = 3;
+
+    /** Record tags.
+     *  <p>
+     *  Each record is a tag, an id, a long time in ticks and a byte value, and
+     *  records for input gates add the change count left, an int.
+     */
+    public static final int GATE = 0;
+    public static final int WIRE = 1;
+
+    /** The length of the longest record, in bytes.
+     */
+    static final int RECORD = 18;
+
+    // The size of the buffer records are put in
+    private static final int BUFFER = 1 << 16;
+
+    private final OutputStream out;
+    private final Netlist net;
+
+    // The records not yet written
+    private final ByteBuffer buf = ByteBuffer.allocate( BUFFER );
+
+    /** Construct a binary trace and write its header.
+     *  @param o the stream to write to
+     *  @param n the netlist being traced
+     */
+    public BinaryTrace( OutputStream o, Netlist n ) {
+        out = o;
+        net = n;
+        try {
+            final DataOutputStream header
+                = new DataOutputStream( new BufferedOutputStream( o, BUFFER ) );
+            header.writeInt( MAGIC );
+            header.writeInt( VERSION );
+            n.write( header );
+            header.flush();
+        } catch (IOException e) {
+            failed( e );
+        }
+    }
+
+    /** Report a change in the output of a gate.
+     *  @param time the simulated time of the change, in ticks
+     *  @param g the gate id
+     *  @param value the new value
+     */
+    public void gateChange( long time, int g, int value ) {
+        if (buf.remaining() < RECORD) drain();
+        buf.put( (byte)GATE ).putInt( g ).putLong( time ).put( (byte)value );
+        if (net.kind( g ) == Netlist.INPUT) buf.putInt( net.changesLeft( g ) );
+    }
+
+    /** Report a change in the output of a wire.
+     *  @param time the simulated time of the change, in ticks
+     *  @param w the wire id
+     *  @param value the new value
+     */
+    public void wireChange( long time, int w, int value ) {
+        if (buf.remaining() < RECORD) drain();
+        buf.put( (byte)WIRE ).putInt( w ).putLong( time ).put( (byte)value );
+    }
+
+    /** Write out the buffer, so the trace so far is complete.
+     */
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed( e );
+        }
+    }
+
+    /** Finish the trace, flushing the buffer.
+     */
+    public void close() {
+        flush();
+    }
+
+    // Write out the buffer
+    private void drain() {
+        try {
+            out.write( buf.array(), 0, buf.position() );
+        } catch (IOException e) {
+            failed( e );
+        }
+        buf.clear();
+    }
+
+    // Report a failure to write the trace
+    private void failed( IOException e ) {
+        net.errors().fatal( "Can't write the trace: " + e.getMessage() );
+    }
+}
@@ -0,0 +1,355 @@
+// ByteScanner.java
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** A fast replacement for the parts of class Scanner used to read netlists.
+ *  <p>
+ *  Input is read in large blocks from a channel and tokenized byte by
+ *  byte, with no regular expressions and no locale dependence.  As with
+ *  Scanner, tokens are separated by white space, and asking whether the
+ *  next token has some form does not consume it.  Closing the scanner
+ *  closes the channel.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see ScanSupport
+ */
+public class ByteScanner implements Closeable {
+
+    // Size of the initial input buffer
+    private static final int BUFFER = 1 << 16;
+
+    // Where the input comes from, and where problems are reported
+    private final ReadableByteChannel in;
+    private final Errors errors;
+    private boolean eof = false;
+
+    // The buffered input is buf[pos .. lim-1]
+    private byte[] buf = new byte[BUFFER];
+    private int pos = 0;
+    private int lim = 0;
+
+    // The line number at pos
+    private int line = 1;
+
+    // True once pos is past the end of the line of the last token scanned
+    private boolean lineDone = false;
+
+    // The line number of the last token scanned
+    private int tokenLine = 0;
+
+    // The next token, buf[pos+start .. pos+end-1], valid when start >= 0
+    private int start = -1;
+    private int end = 0;
+    private int startLine = 0;
+
+    /** Scan from a channel.
+     *  @param c the channel to read from
+     *  @param e where problems with the input are reported
+     */
+    public ByteScanner( ReadableByteChannel c, Errors e ) {
+        in = c;
+        errors = e;
+    }
+
+    /** Scan from a file.
+     *  @param fileName the name of the file to read from
+     *  @param e where problems with the input are reported
+     *  @throws FileNotFoundException if the file can't be opened
+     */
+    public ByteScanner(
+        String fileName, Errors e
+    ) throws FileNotFoundException {
+        this( new FileInputStream( fileName ).getChannel(), e );
+    }
+
+    /** Where problems with the input are reported.
+     *  @return the error reporter
+     */
+    public Errors errors() {
+        return errors;
+    }
+
+    /** The line number of the token most recently scanned.
+     *  @return the line number, counting from 1, or 0 before the first token
+     */
+    public int line() {
+        return tokenLine;
+    }
+
+    /** Test for another token.
+     *  @return true if there is one
+     */
+    public boolean hasNext() {
+        return peek();
+    }
+
+    /** Scan one token.
+     *  @return the token
+     */
+    public String next() {
+        if (!peek()) throw new NoSuchElementException();
+        final String t = new String(
+            buf, pos + start, end - start, StandardCharsets.UTF_8
+        );
+        consume();
+        return t;
+    }
+
+    /** Test whether the next token is a name.
+     *  <p>
+     *  Names are letters, optionally ending in one digit.
+     *  @return true if it is
+     */
+    public boolean hasNextName() {
+        if (!peek()) return false;
+        final int e = pos + end - 1;
+        for (int i = pos + start; i < e; i++) {
+            if (!isLetter( buf[i] )) return false;
+        }
+        return isLetter( buf[e] ) || isDigit( buf[e] );
+    }
+
+    /** Test whether the next token is an int.
+     *  @return true if it is
+     */
+    public boolean hasNextInt() {
+        if (!peek()) return false;
+        int i = pos + start;
+        final int e = pos + end;
+        if ((buf[i] == '-') || (buf[i] == '+')) i = i + 1;
+        if (i == e) return false;
+        long value = 0;
+        for (; i < e; i++) {
+            if (!isDigit( buf[i] )) return false;
+            value = value * 10 + (buf[i] - '0');
+            if (value > 1L + Integer.MAX_VALUE) return false;
+        }
+        if (buf[pos + start] == '-') return true;
+        return value <= Integer.MAX_VALUE;
+    }
+
+    /** Scan one int, call only after hasNextInt().
+     *  @return the value
+     */
+    public int nextInt() {
+        int i = pos + start;
+        final int e = pos + end;
+        final boolean negative = buf[i] == '-';
+        if ((buf[i] == '-') || (buf[i] == '+')) i = i + 1;
+        long value = 0;
+        for (; i < e; i++) value = value * 10 + (buf[i] - '0');
+        consume();
+        return (int)(negative ? -value : value);
+    }
+
+    /** Test whether the next token is a float.
+     *  @return true if it is
+     */
+    public boolean hasNextFloat() {
+        if (!peek()) return false;
+        int i = pos + start;
+        final int e = pos + end;
+        if ((buf[i] == '-') || (buf[i] == '+')) i = i + 1;
+        if (matches( i, e, "NaN" ) || matches( i, e, "Infinity" )) return true;
+        int digits = 0;
+        while ((i < e) && isDigit( buf[i] )) {
+            i = i + 1;
+            digits = digits + 1;
+        }
+        if ((i < e) && (buf[i] == '.')) {
+            i = i + 1;
+            while ((i < e) && isDigit( buf[i] )) {
+                i = i + 1;
+                digits = digits + 1;
+            }
+        }
+        if (digits == 0) return false;
+        if ((i < e) && ((buf[i] == 'e') || (buf[i] == 'E'))) {
+            i = i + 1;
+            if ((i < e) && ((buf[i] == '-') || (buf[i] == '+'))) i = i + 1;
+            if ((i == e) || !isDigit( buf[i] )) return false;
+            while ((i < e) && isDigit( buf[i] )) i = i + 1;
+        }
+        return i == e;
+    }
+
+    /** Scan one float, call only after hasNextFloat().
+     *  @return the value
+     */
+    public float nextFloat() {
+        int i = pos + start;
+        final int e = pos + end;
+        final boolean negative = buf[i] == '-';
+        if ((buf[i] == '-') || (buf[i] == '+')) i = i + 1;
+        // Fast path for short plain decimals, the usual case in netlists
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean simple = true;
+        for (; i < e; i++) {
+            final byte b = buf[i];
+            if (isDigit( b )) {
+                mantissa = mantissa * 10 + (b - '0');
+                digits = digits + 1;
+                if (scale > 0) scale = scale + 1;
+            } else if ((b == '.') && (scale == 0)) {
+                scale = 1;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        final float value;
+        if (simple && (digits <= 18) && (mantissa < (1 << 24))
+            && (scale <= POWERS.length + 1)
+        ) {
+            // The mantissa and the power of ten are both exact floats, so
+            // one division rounds once, as Float.parseFloat does;
+            // scale - 1 is the number of digits after the point
+            float v = mantissa;
+            if (scale > 1) v = v / POWERS[scale - 2];
+            value = negative ? -v : v;
+        } else {
+            value = Float.parseFloat( new String(
+                buf, pos + start, end - start, StandardCharsets.UTF_8
+            ) );
+        }
+        consume();
+        return value;
+    }
+
+    /** Close the channel the input comes from.
+     *  @throws IOException if the channel can't be closed
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** Skip the rest of this line, including the newline.
+     *  @return the rest of the line, less leading blanks, possibly ""
+     */
+    public String restOfLine() {
+        start = -1;
+        if (lineDone) return "";
+        // Skip blanks
+        int i = 0;
+        while (ensure( i ) && isBlank( buf[pos + i] )) i = i + 1;
+        final int from = i;
+        while (ensure( i ) && (buf[pos + i] != '\n')) i = i + 1;
+        int to = i;
+        if ((to > from) && (buf[pos + to - 1] == '\r')) to = to - 1;
+        final String rest = (to > from)
+            ? new String( buf, pos + from, to - from, StandardCharsets.UTF_8 )
+            : "";
+        if (ensure( i )) {
+            i = i + 1;
+            line = line + 1;
+        }
+        pos = pos + i;
+        lineDone = true;
+        return rest;
+    }
+
+    // Powers of ten for the fast float path, all of them exact floats
+    private static final float[] POWERS = {
+        1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    // Find the next token, without consuming it; false at end of input
+    private boolean peek() {
+        if (start >= 0) return true;
+        int i = 0;
+        for (;;) {
+            if (!ensure( i )) return false;
+            final byte b = buf[pos + i];
+            if (!isWhite( b )) break;
+            i = i + 1;
+            if (b == '\n') {
+                // The current line is over, so stop holding on to it
+                pos = pos + i;
+                line = line + 1;
+                lineDone = true;
+                i = 0;
+            }
+        }
+        int j = i;
+        while (ensure( j ) && !isWhite( buf[pos + j] )) j = j + 1;
+        start = i;
+        end = j;
+        startLine = line;
+        return true;
+    }
+
+    // Consume the token found by peek()
+    private void consume() {
+        pos = pos + end;
+        line = startLine;
+        tokenLine = startLine;
+        lineDone = false;
+        start = -1;
+    }
+
+    // Make sure buf[pos+i] is in the buffer; false if at end of input
+    private boolean ensure( int i ) {
+        while (pos + i >= lim) {
+            if (eof) return false;
+            // Slide the buffered input down, growing the buffer if it is full
+            if (pos > 0) {
+                System.arraycopy( buf, pos, buf, 0, lim - pos );
+                lim = lim - pos;
+                pos = 0;
+            } else if (lim == buf.length) {
+                buf = Arrays.copyOf( buf, buf.length * 2 );
+            }
+            try {
+                final int n = in.read(
+                    ByteBuffer.wrap( buf, lim, buf.length - lim )
+                );
+                if (n < 0) {
+                    eof = true;
+                } else {
+                    lim = lim + n;
+                }
+            } catch (IOException e) {
+                errors.warn( "Read error: " + e.getMessage() );
+                eof = true;
+            }
+        }
+        return true;
+    }
+
+    // Does buf[i .. e-1] spell s?
+    private boolean matches( int i, int e, String s ) {
+        if (e - i != s.length()) return false;
+        for (int k = 0; k < s.length(); k++) {
+            if (buf[i + k] != s.charAt( k )) return false;
+        }
+        return true;
+    }
+
+    // Character classes, white space is as defined by Character.isWhitespace
+    private static boolean isWhite( byte b ) {
+        return (b == ' ') || ((b >= '\t') && (b <= '\r'))
+            || ((b >= 0x1C) && (b <= 0x1F));
+    }
+
+    private static boolean isBlank( byte b ) {
+        return (b == ' ') || (b == '\t');
+    }
+
+    private static boolean isLetter( byte b ) {
+        return ((b >= 'A') && (b <= 'Z')) || ((b >= 'a') && (b <= 'z'));
+    }
+
+    private static boolean isDigit( byte b ) {
+        return (b >= '0') && (b <= '9');
+    }
+}
@@ -0,0 +1,239 @@
+// CalendarQueue.java
+
+import java.util.Arrays;
+
+/** Event set kept as a calendar queue.
+ *  <p>
+ *  Time is divided into buckets of a fixed width, the buckets are used
+ *  round robin like the days of a calendar, and each bucket holds a short
+ *  sorted list of slots.  The number of buckets and their width are
+ *  adjusted as the set grows and shrinks, so the cost of inserting and
+ *  removing an event stays roughly constant however many are pending.
+ *  Times are whole ticks and the width is a power of two ticks, so the
+ *  day of an event is a shift of its time.
+ *  See R. Brown, Calendar Queues, CACM 31, 10 (Oct. 1988).
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see EventSet
+ */
+public class CalendarQueue extends EventSet {
+
+    // Never use fewer buckets than this
+    private static final int MIN_BUCKETS = 16;
+
+    // Number of events sampled to estimate the bucket width
+    private static final int SAMPLE = 25;
+
+    // The list of slots in each bucket and its last slot, -1 marks an empty
+    // bucket; events tied in time mostly go at the end of their bucket
+    private int[] bucket = emptyBuckets( MIN_BUCKETS );
+    private int[] last = emptyBuckets( MIN_BUCKETS );
+
+    // The list links, next[s] follows slot s in its bucket, -1 marks the end
+    private int[] next = new int[capacity()];
+
+    // The bucket width is 1 << shift ticks, and the number of buckets is
+    // a power of two, mask + 1
+    private int shift = 0;
+    private int mask = MIN_BUCKETS - 1;
+
+    // The day being searched, it lives in bucket day & mask
+    private long day = 0;
+
+    // The number of slots in the buckets
+    private int size = 0;
+
+    // Used while resizing so that the sample is not itself resized
+    private boolean resizing = false;
+
+    /** Put a filled in slot into its bucket.
+     *  @param s the slot
+     */
+    protected void insert( int s ) {
+        final long d = dayOf( time[s] );
+        if (d < day) day = d;
+        link( s, (int)(d & mask) );
+        size = size + 1;
+        if ((size > 2 * (mask + 1)) && !resizing) resize( (mask + 1) * 2 );
+    }
+
+    /** Take the earliest slot out of the calendar.
+     *  @return the slot
+     */
+    protected int removeFirst() {
+        final int s = peekFirst();
+        final int b = (int)(day & mask);
+        bucket[b] = next[s];
+        if (next[s] < 0) last[b] = -1;
+        size = size - 1;
+        if ((size < (mask + 1) / 2) && (mask + 1 > MIN_BUCKETS) && !resizing) {
+            resize( (mask + 1) / 2 );
+        }
+        return s;
+    }
+
+    /** Find the earliest slot, leaving it in the calendar.
+     *  <p>
+     *  This advances the current day to the day of that slot, which is
+     *  always at the head of its bucket.  A search that finds nothing in a
+     *  whole year means the buckets are too narrow, so the width is then
+     *  estimated afresh.
+     *  @return the slot
+     */
+    protected int peekFirst() {
+        int s = searchYear();
+        if ((s < 0) && !resizing && (size > 1)) {
+            resize( mask + 1 );
+            s = searchYear();
+        }
+        return (s >= 0) ? s : earliest();
+    }
+
+    // Search one trip around the calendar from the current day, -1 if
+    // that finds nothing
+    private int searchYear() {
+        for (int n = 0; n <= mask; n++) {
+            final int h = bucket[(int)(day & mask)];
+            if ((h >= 0) && (dayOf( time[h] ) <= day)) return h;
+            day = day + 1;
+        }
+        return -1;
+    }
+
+    // Jump directly to the earliest slot
+    private int earliest() {
+        int s = -1;
+        for (int b = 0; b <= mask; b++) {
+            final int h = bucket[b];
+            if ((h >= 0) && ((s < 0) || before( h, s ))) s = h;
+        }
+        day = dayOf( time[s] );
+        return s;
+    }
+
+    /** Take any slot out of its bucket.
+     *  @param s the slot
+     */
+    protected void delete( int s ) {
+        final int b = (int)(dayOf( time[s] ) & mask);
+        if (bucket[b] == s) {
+            bucket[b] = next[s];
+            if (next[s] < 0) last[b] = -1;
+        } else {
+            int p = bucket[b];
+            while (next[p] != s) p = next[p];
+            next[p] = next[s];
+            if (last[b] == s) last[b] = p;
+        }
+        size = size - 1;
+        if ((size < (mask + 1) / 2) && (mask + 1 > MIN_BUCKETS) && !resizing) {
+            resize( (mask + 1) / 2 );
+        }
+    }
+
+    /** Put every slot in the calendar into an array.
+     *  @param a the array
+     */
+    protected void fill( int[] a ) {
+        int n = 0;
+        for (int h: bucket) {
+            for (int s = h; s >= 0; s = next[s]) {
+                a[n] = s;
+                n = n + 1;
+            }
+        }
+    }
+
+    /** Grow the list links along with the pool.
+     *  @param capacity the new number of slots
+     */
+    protected void resized( int capacity ) {
+        next = Arrays.copyOf( next, capacity );
+    }
+
+    // Link slot s into bucket b, after every slot that precedes it
+    private void link( int s, int b ) {
+        int p = bucket[b];
+        if (p < 0) {
+            next[s] = -1;
+            bucket[b] = s;
+            last[b] = s;
+            return;
+        }
+        if (before( last[b], s )) {
+            next[s] = -1;
+            next[last[b]] = s;
+            last[b] = s;
+            return;
+        }
+        if (before( s, p )) {
+            next[s] = p;
+            bucket[b] = s;
+            return;
+        }
+        while ((next[p] >= 0) && before( next[p], s )) p = next[p];
+        next[s] = next[p];
+        next[p] = s;
+    }
+
+    // Which day a time falls on
+    private long dayOf( long t ) {
+        return t >> shift;
+    }
+
+    // Rebuild the calendar with n buckets and a freshly estimated width
+    private void resize( int n ) {
+        resizing = true;
+        // Sample the earliest events to estimate the spacing between events
+        final int k = Math.min( SAMPLE, size );
+        final int[] sample = new int[k];
+        for (int i = 0; i < k; i++) sample[i] = removeFirst();
+        int w = shift;
+        if (k > 1) {
+            final double average
+                = (time[sample[k - 1]] - time[sample[0]]) / (k - 1.0);
+            // Ignore large gaps, they don't reflect the typical spacing
+            long sum = 0;
+            int gaps = 0;
+            for (int i = 1; i < k; i++) {
+                final long gap = time[sample[i]] - time[sample[i - 1]];
+                if (gap <= 2.0 * average) {
+                    sum = sum + gap;
+                    gaps = gaps + 1;
+                }
+            }
+            // Round three times the typical gap down to a power of two, so
+            // that when many events share a tick each tick has a bucket
+            if (sum > 0) {
+                final long width = Math.max( 3 * sum / gaps, 1 );
+                w = 63 - Long.numberOfLeadingZeros( width );
+            }
+        }
+
+        // Relink every slot into the new buckets
+        final int[] old = bucket;
+        bucket = emptyBuckets( n );
+        last = emptyBuckets( n );
+        shift = w;
+        mask = n - 1;
+        size = 0;
+        day = Long.MAX_VALUE;
+        for (int h: old) {
+            while (h >= 0) {
+                final int following = next[h];
+                insert( h );
+                h = following;
+            }
+        }
+        for (int s: sample) insert( s );
+        if (size == 0) day = 0;
+        resizing = false;
+    }
+
+    // A new array of n empty buckets
+    private static int[] emptyBuckets( int n ) {
+        final int[] b = new int[n];
+        Arrays.fill( b, -1 );
+        return b;
+    }
+}
@@ -0,0 +1,98 @@
+// Checkpoint.java
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/** Saved state of a sequential simulation, so that a run can be resumed.
+ *  <p>
+ *  A checkpoint holds the simulated time, the pending typed events and
+ *  the state of every gate, with a checksum of the netlist so that it is
+ *  only resumed with the circuit it was saved from.  Every event of the
+ *  netlist is a (kind, target, value) triple, so nothing needs to be
+ *  serialized but numbers.  A checkpoint is written to a temporary file
+ *  first and then renamed, so a run that dies while saving leaves the
+ *  previous checkpoint whole.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see Simulation
+ */
+public class Checkpoint {
+
+    /** The first int of every checkpoint, "LSCK".
+     */
+    public static final int MAGIC = 0x4C53434B;
+
+    /** The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /** Save the state of a simulation between batches of events.
+     *  @param fileName the file to save it in
+     *  @param net the netlist, launched under the simulation
+     */
+    public static void save( String fileName, Netlist net ) {
+        final Path file = Paths.get( fileName );
+        final Path temporary = Paths.get( fileName + ".tmp" );
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    new FileOutputStream( temporary.toFile() ), 1 << 16
+                )
+            )
+        ) {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeLong( net.fingerprint() );
+            net.writeState( out );
+        } catch (IOException e) {
+            net.errors().fatal( "Can't write the checkpoint: "
+                + e.getMessage() );
+        }
+        try {
+            Files.move( temporary, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+        } catch (IOException e) {
+            net.errors().fatal( "Can't write the checkpoint: "
+                + e.getMessage() );
+        }
+    }
+
+    /** Restore the state of a simulation, instead of launching it.
+     *  @param fileName the file the state was saved in
+     *  @param net the netlist, freshly compiled from the same circuit
+     *  @param sim the simulation, with an empty event set
+     */
+    public static void restore(
+        String fileName, Netlist net, Simulation sim
+    ) {
+        final Errors errors = net.errors();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(
+                    new FileInputStream( fileName ), 1 << 16
+                )
+            )
+        ) {
+            if (in.readInt() != MAGIC) {
+                errors.fatal( "Not a checkpoint" );
+            }
+            if (in.readInt() != VERSION) {
+                errors.fatal( "Checkpoint version unsupported" );
+            }
+            if (in.readLong() != net.fingerprint()) {
+                errors.fatal( "Checkpoint of another circuit" );
+            }
+            net.readState( in, sim );
+        } catch (IOException e) {
+            errors.fatal( "Can't read the checkpoint: " + e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,627 @@
+// CircuitGenerator.java
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Generator of large synthetic netlists for scale and stress testing.
+ *  <p>
+ *  The random family is a graph of xor and threshold gates with chosen
+ *  fan-in, fan-out, delays and feedback; the structured families are
+ *  ripple carry adders, array multipliers, the carry chains of ripple
+ *  counters, linear feedback shift registers and ring oscillators.  Gates
+ *  are named in base 26 by the order they are made, every line is in the
+ *  ordinary gate and wire syntax, and each wire comes after both of its
+ *  gates.  Loops run only while an enable input is high, so every
+ *  generated circuit eventually comes to rest and the simulation ends.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see LogicSimulator
+ */
+public class CircuitGenerator {
+
+    // A distribution of delays: a fixed value, uniform between two values
+    // or exponential with a given mean
+    private static class Distribution {
+        private final boolean exponential;
+        private final double low;
+        private final double high;
+
+        // Parse d, a:b or exp:m; isValid() tells whether that worked
+        Distribution( String spec ) {
+            double lo = 0;
+            double hi = 0;
+            boolean exp = false;
+            try {
+                if (spec.startsWith( "exp:" )) {
+                    exp = true;
+                    lo = Double.parseDouble( spec.substring( 4 ) );
+                    hi = lo;
+                } else if (spec.indexOf( ':' ) >= 0) {
+                    final int colon = spec.indexOf( ':' );
+                    lo = Double.parseDouble( spec.substring( 0, colon ) );
+                    hi = Double.parseDouble( spec.substring( colon + 1 ) );
+                } else {
+                    lo = Double.parseDouble( spec );
+                    hi = lo;
+                }
+            } catch( NumberFormatException e ) {
+                lo = 0;
+            }
+            exponential = exp;
+            low = lo;
+            high = hi;
+        }
+
+        boolean isValid() {
+            return (low > 0) && (high >= low);
+        }
+
+        double next( Random r ) {
+            if (exponential) return -low * Math.log( 1 - r.nextDouble() );
+            return low + (high - low) * r.nextDouble();
+        }
+    }
+
+    // Where the problems with the options are reported
+    private final Errors errors;
+
+    // The text of the netlist is built up here, then written out in blocks
+    private final OutputStream out;
+    private final StringBuilder text = new StringBuilder();
+
+    // The settings, from the command line
+    private long seed = 1;
+    private int size = 16;
+    private int copies = 1;
+    private int inputs = 16;
+    private int toggles = 4;
+    private int outputs = 0;
+    private int minFanIn = 1;
+    private int maxFanIn = 4;
+    private String fanOut = "local";
+    private int window = 50;
+    private double xorShare = 0.5;
+    private double feedback = 0.0;
+    private Distribution delays = new Distribution( "0.1:1.0" );
+    private Distribution periods = new Distribution( "1.0:2.0" );
+    private int grid = 100;
+    private int runTime = 100000;
+
+    private Random random;
+
+    // The number of gates made so far, each named by its number
+    private int gates = 0;
+
+    // Loops in the random family wait here for their source to be made,
+    // listed by the index of that source in the family, linked by next
+    private int[] loopFirst;
+    private int[] loopDst = new int[16];
+    private int[] loopNext = new int[16];
+    private int loops = 0;
+
+    // Shared gates, made when first needed: the enable input that lets
+    // loops run, and a constant one input
+    private int enable = -1;
+    private int one = -1;
+
+    // Sources used so far, one entry per wire, for skewed fan-out
+    private int[] used = new int[16];
+    private int usedCount = 0;
+
+    private CircuitGenerator( OutputStream o, Errors e ) {
+        out = o;
+        errors = e;
+    }
+
+    // Gate names are letters with at most one trailing digit, so base 26
+    private void name( int g ) {
+        text.append( 'g' );
+        final int start = text.length();
+        do {
+            text.append( (char)('a' + g % 26) );
+            g = g / 26;
+        } while (g > 0);
+        // The digits came out least significant first
+        for (int i = start, j = text.length() - 1; i < j; i++, j--) {
+            final char c = text.charAt( i );
+            text.setCharAt( i, text.charAt( j ) );
+            text.setCharAt( j, c );
+        }
+    }
+
+    // Append a delay drawn from a distribution, rounded to the grid
+    private void delay( Distribution d ) {
+        long m = Math.round( d.next( random ) * 1000 / grid ) * grid;
+        if (m < grid) m = grid;
+        text.append( m / 1000 ).append( '.' );
+        final int frac = (int)(m % 1000);
+        if (frac == 0) {
+            text.append( '0' );
+        } else {
+            text.append( (char)('0' + frac / 100) );
+            if (frac % 100 != 0) text.append( (char)('0' + frac / 10 % 10) );
+            if (frac % 10 != 0) text.append( (char)('0' + frac % 10) );
+        }
+    }
+
+    // End a line, writing out the text once there is plenty of it
+    private void endLine() {
+        text.append( '\n' );
+        if (text.length() >= (1 << 16)) flush();
+    }
+
+    private void flush() {
+        try {
+            out.write( text.toString().getBytes( StandardCharsets.US_ASCII ) );
+        } catch( IOException e ) {
+            errors.fatal( "Can't write the netlist: " + e.getMessage() );
+        }
+        text.setLength( 0 );
+    }
+
+    // Start a gate line, returning the id of the new gate
+    private int gate( String kind ) {
+        final int g = gates;
+        gates = gates + 1;
+        text.append( "gate " );
+        name( g );
+        text.append( ' ' ).append( kind );
+        return g;
+    }
+
+    // Make an input gate that toggles the given number of times
+    private int input( int initial, int count ) {
+        final int g = gate( "input " );
+        text.append( initial ).append( ' ' );
+        delay( periods );
+        text.append( ' ' ).append( count );
+        endLine();
+        return g;
+    }
+
+    // Make an xor gate or a threshold gate
+    private int xor() {
+        final int g = gate( "xor " );
+        delay( delays );
+        endLine();
+        return g;
+    }
+
+    private int threshold( int t ) {
+        final int g = gate( "threshold " );
+        text.append( t ).append( ' ' );
+        delay( delays );
+        endLine();
+        return g;
+    }
+
+    private int output() {
+        final int g = gate( "output" );
+        endLine();
+        return g;
+    }
+
+    // Connect two gates that have both been made
+    private void wire( int src, int dst ) {
+        text.append( "wire " );
+        name( src );
+        text.append( ' ' );
+        delay( delays );
+        text.append( ' ' );
+        name( dst );
+        endLine();
+        if (usedCount == used.length) {
+            used = Arrays.copyOf( used, used.length * 2 );
+        }
+        used[usedCount] = src;
+        usedCount = usedCount + 1;
+    }
+
+    // The shared enable input, high until the run time is over
+    private int enable() {
+        if (enable < 0) {
+            enable = gate( "input 1 " );
+            text.append( runTime / 1000 ).append( '.' )
+                .append( String.format( "%03d", runTime % 1000 ) )
+                .append( " 1" );
+            endLine();
+        }
+        return enable;
+    }
+
+    // The shared constant one, used to turn xor gates into inverters
+    private int one() {
+        if (one < 0) one = input( 1, 0 );
+        return one;
+    }
+
+    // Make a gate that passes a feedback signal only while the enable is
+    // high, so the loop dies out; the caller wires the signal to it
+    private int gate() {
+        final int en = enable();
+        final int g = threshold( 2 );
+        wire( en, g );
+        return g;
+    }
+
+    // An input operand bit, toggling as the options say
+    private int operand() {
+        return input( random.nextInt( 2 ), toggles );
+    }
+
+    // Half and full adders, returning {sum, carry}
+    private int[] halfAdder( int x, int y ) {
+        final int s = xor();
+        wire( x, s );
+        wire( y, s );
+        final int c = threshold( 2 );
+        wire( x, c );
+        wire( y, c );
+        return new int[] { s, c };
+    }
+
+    private int[] fullAdder( int x, int y, int z ) {
+        if (x < 0) return (z < 0) ? new int[] { y, -1 } : halfAdder( y, z );
+        if (z < 0) return halfAdder( x, y );
+        final int t = xor();
+        wire( x, t );
+        wire( y, t );
+        final int s = xor();
+        wire( t, s );
+        wire( z, s );
+        final int c = threshold( 2 );
+        wire( x, c );
+        wire( y, c );
+        wire( z, c );
+        return new int[] { s, c };
+    }
+
+    // Attach an output gate to a signal
+    private void observe( int g ) {
+        if (g >= 0) wire( g, output() );
+    }
+
+    // A ripple carry adder of size bits, with a constant carry in
+    private void adder() {
+        int carry = input( 0, 0 );
+        for (int i = 0; i < size; i++) {
+            final int[] sc = fullAdder( operand(), operand(), carry );
+            observe( sc[0] );
+            carry = sc[1];
+        }
+        observe( carry );
+    }
+
+    // An array multiplier of two size bit operands
+    private void multiplier() {
+        final int[] a = new int[size];
+        final int[] b = new int[size];
+        for (int i = 0; i < size; i++) a[i] = operand();
+        for (int i = 0; i < size; i++) b[i] = operand();
+        // The running sum, bit by bit, -1 for bits known to be zero
+        final int[] sum = new int[2 * size];
+        Arrays.fill( sum, -1 );
+        for (int j = 0; j < size; j++) {
+            int carry = -1;
+            for (int i = 0; i < size; i++) {
+                final int pp = threshold( 2 );
+                wire( a[i], pp );
+                wire( b[j], pp );
+                final int[] sc = fullAdder( sum[i + j], pp, carry );
+                sum[i + j] = sc[0];
+                carry = sc[1];
+            }
+            sum[j + size] = carry;
+        }
+        for (int g: sum) observe( g );
+    }
+
+    // The carry chain of a size bit ripple counter, a chain of half
+    // adders with static bits and a toggling carry in
+    private void ripple() {
+        int carry = operand();
+        for (int i = 0; i < size; i++) {
+            final int bit = input( random.nextInt( 2 ), 0 );
+            final int[] sc = halfAdder( bit, carry );
+            observe( sc[0] );
+            carry = sc[1];
+        }
+        observe( carry );
+    }
+
+    // A size bit linear feedback shift register built of delay lines,
+    // with taps on the last two stages and a seed pulse to start it
+    private void lfsr() {
+        final int seedPulse = input( 0, 2 );
+        final int head = xor();
+        wire( seedPulse, head );
+        int stage = head;
+        int tap = -1;
+        for (int i = 0; i < size; i++) {
+            final int buffer = threshold( 1 );
+            wire( stage, buffer );
+            if (i == size - 2) tap = buffer;
+            stage = buffer;
+        }
+        final int taps;
+        if (tap >= 0) {
+            taps = xor();
+            wire( tap, taps );
+            wire( stage, taps );
+        } else {
+            taps = stage;
+        }
+        final int loop = gate();
+        wire( taps, loop );
+        wire( loop, head );
+        observe( stage );
+    }
+
+    // A ring oscillator of size inverters, size made odd
+    private void ring() {
+        final int loop = gate();
+        int stage = loop;
+        for (int i = 0; i < (size | 1); i++) {
+            final int inverter = xor();
+            wire( stage, inverter );
+            wire( one(), inverter );
+            stage = inverter;
+        }
+        wire( stage, loop );
+        observe( stage );
+    }
+
+    // A random graph of size gates, the first few of them inputs
+    private void random() {
+        final int base = gates;
+        final int count = Math.min( inputs, size );
+        final int[] made = new int[size];
+        loopFirst = new int[size];
+        Arrays.fill( loopFirst, -1 );
+        for (int i = 0; i < count; i++) made[i] = operand();
+        for (int i = count; i < size; i++) {
+            final int fanIn;
+            final int g;
+            if (random.nextDouble() < xorShare) {
+                fanIn = 2;
+                g = xor();
+            } else {
+                fanIn = minFanIn + random.nextInt( maxFanIn - minFanIn + 1 );
+                g = threshold( 1 + random.nextInt( fanIn ) );
+            }
+            for (int j = 0; j < fanIn; j++) {
+                if ((i + 1 < size) && (random.nextDouble() < feedback)) {
+                    // A loop back from a gate that is yet to be made
+                    final int loop = gate();
+                    wire( loop, g );
+                    addLoop( i + 1 + random.nextInt( size - i - 1 ), loop );
+                } else {
+                    wire( source( base, g ), g );
+                }
+            }
+            // Close the loops waiting for this gate
+            for (int k = loopFirst[i]; k >= 0; k = loopNext[k]) {
+                wire( g, loopDst[k] );
+            }
+            made[i] = g;
+        }
+        for (int i = 0; i < outputs; i++) {
+            observe( made[random.nextInt( size )] );
+        }
+    }
+
+    // Record a loop from the gate with index i in the random family
+    private void addLoop( int i, int dst ) {
+        if (loops == loopDst.length) {
+            loopDst = Arrays.copyOf( loopDst, loops * 2 );
+            loopNext = Arrays.copyOf( loopNext, loops * 2 );
+        }
+        loopDst[loops] = dst;
+        loopNext[loops] = loopFirst[i];
+        loopFirst[i] = loops;
+        loops = loops + 1;
+    }
+
+    // Pick the source of a wire to gate g from the gates made before it
+    private int source( int base, int g ) {
+        if ("uniform".equals( fanOut )) {
+            return base + random.nextInt( g - base );
+        } else if ("skewed".equals( fanOut ) && (usedCount > 0)
+            && random.nextBoolean()
+        ) {
+            // Preferential attachment, sources with many wires get more
+            final int s = used[random.nextInt( usedCount )];
+            if ((s >= base) && (s < g) && (s != enable) && (s != one)) {
+                return s;
+            }
+        }
+        return Math.max( base, g - 1 - random.nextInt( window ) );
+    }
+
+    // Generate a netlist of the named family
+    private void generate( String family ) {
+        random = new Random( seed );
+        for (int c = 0; c < copies; c++) {
+            if ("random".equals( family )) {
+                random();
+            } else if ("adder".equals( family )) {
+                adder();
+            } else if ("multiplier".equals( family )) {
+                multiplier();
+            } else if ("ripple".equals( family )) {
+                ripple();
+            } else if ("lfsr".equals( family )) {
+                lfsr();
+            } else if ("ring".equals( family )) {
+                ring();
+            } else {
+                errors.fatal( "Family " + family + ": unknown" );
+            }
+        }
+        flush();
+    }
+
+    // Scan an int option, which must be at least min
+    private int intOption( String option, String value, int min ) {
+        try {
+            final int v = Integer.parseInt( value );
+            if (v >= min) return v;
+        } catch( NumberFormatException e ) {
+            // Reported below
+        }
+        errors.fatal( option + " " + value + ": must be an int >= " + min );
+        return min;
+    }
+
+    // Scan a fraction option, from 0 to 1
+    private double fractionOption( String option, String value ) {
+        try {
+            final double v = Double.parseDouble( value );
+            if ((v >= 0) && (v <= 1)) return v;
+        } catch( NumberFormatException e ) {
+            // Reported below
+        }
+        errors.fatal( option + " " + value + ": must be from 0 to 1" );
+        return 0;
+    }
+
+    // Scan a time option, returning thousandths
+    private int timeOption( String option, String value ) {
+        try {
+            final double v = Double.parseDouble( value );
+            if ((v >= 0.001) && (v < 1e6)) return (int)Math.round( v * 1000 );
+        } catch( NumberFormatException e ) {
+            // Reported below
+        }
+        errors.fatal( option + " " + value + ": must be a positive time" );
+        return 1;
+    }
+
+    private Distribution distributionOption( String option, String value ) {
+        final Distribution d = new Distribution( value );
+        if (!d.isValid()) {
+            errors.fatal( option + " " + value + ": must be d, a:b or exp:m" );
+        }
+        return d;
+    }
+
+    // Apply the options and generate, returning the family name
+    private void run( String[] args ) {
+        String family = null;
+        for (int i = 0; i < args.length; i++) {
+            final String o = args[i];
+            if (!o.startsWith( "-" )) {
+                if (family != null) errors.fatal( "Extra arguments" );
+                family = o;
+                continue;
+            }
+            if (i + 1 == args.length) errors.fatal( o + ": value expected" );
+            i = i + 1;
+            final String v = args[i];
+            if ("-seed".equals( o )) {
+                try {
+                    seed = Long.parseLong( v );
+                } catch( NumberFormatException e ) {
+                    errors.fatal( o + " " + v + ": must be an integer" );
+                }
+            } else if ("-size".equals( o )) {
+                size = intOption( o, v, 1 );
+            } else if ("-copies".equals( o )) {
+                copies = intOption( o, v, 1 );
+            } else if ("-inputs".equals( o )) {
+                inputs = intOption( o, v, 1 );
+            } else if ("-toggles".equals( o )) {
+                toggles = intOption( o, v, 0 );
+            } else if ("-outputs".equals( o )) {
+                outputs = intOption( o, v, 0 );
+            } else if ("-fanin".equals( o )) {
+                final int colon = v.indexOf( ':' );
+                minFanIn = intOption(
+                    o, (colon < 0) ? v : v.substring( 0, colon ), 1
+                );
+                maxFanIn = intOption(
+                    o, (colon < 0) ? v : v.substring( colon + 1 ), minFanIn
+                );
+            } else if ("-fanout".equals( o )) {
+                if (!"local".equals( v ) && !"uniform".equals( v )
+                    && !"skewed".equals( v )
+                ) {
+                    errors.fatal( o + " " + v + ": unknown" );
+                }
+                fanOut = v;
+            } else if ("-window".equals( o )) {
+                window = intOption( o, v, 1 );
+            } else if ("-xor".equals( o )) {
+                xorShare = fractionOption( o, v );
+            } else if ("-feedback".equals( o )) {
+                feedback = fractionOption( o, v );
+            } else if ("-delay".equals( o )) {
+                delays = distributionOption( o, v );
+            } else if ("-period".equals( o )) {
+                periods = distributionOption( o, v );
+            } else if ("-grid".equals( o )) {
+                grid = timeOption( o, v );
+            } else if ("-run".equals( o )) {
+                runTime = timeOption( o, v );
+            } else {
+                errors.fatal( "Option " + o + ": unknown" );
+            }
+        }
+        if (family == null) errors.fatal( "Missing argument" );
+        generate( family );
+    }
+
+    /** Generate a netlist in memory.
+     *  @param args the options and family, as on the command line
+     *  @return the text of the netlist
+     */
+    static byte[] generate( String... args ) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new CircuitGenerator( bytes, new Errors( "Generator" ) ).run( args );
+        return bytes.toByteArray();
+    }
+
+    /** Main method.
+     *  <p>
+     *  Usage: java CircuitGenerator [options] family
+     *  where the family is random, adder, multiplier, ripple, lfsr or ring,
+     *  and the netlist goes to System.out, or to the file named by -o.
+     *  @param args the command line arguments
+     */
+    public static void main( String[] args ) {
+        final Errors errors = new Errors( "Generator" );
+        try {
+            OutputStream out = System.out;
+            String[] rest = args;
+            for (int i = 0; i + 1 < args.length; i++) {
+                if ("-o".equals( args[i] )) {
+                    try {
+                        out = new FileOutputStream( args[i + 1] );
+                    } catch( FileNotFoundException e ) {
+                        errors.fatal( "Can't open the file" );
+                    }
+                    rest = new String[args.length - 2];
+                    System.arraycopy( args, 0, rest, 0, i );
+                    System.arraycopy(
+                        args, i + 2, rest, i, args.length - i - 2
+                    );
+                    break;
+                }
+            }
+            new CircuitGenerator( out, errors ).run( rest );
+            out.flush();
+            if (out != System.out) out.close();
+        } catch( IOException e ) {
+            errors.warn( "Can't write the netlist: " + e.getMessage() );
+            System.exit( 1 );
+        } catch( Errors.FatalError e ) {
+            System.exit( 1 );
+        }
+    }
+}
@@ -0,0 +1,396 @@
+// CycleSimulation.java
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/** Zero delay engine that finds the steady state for each input vector.
+ *  <p>
+ *  For functional runs only the values a circuit settles to matter, not
+ *  when each change happens.  The xor and threshold gates are put in
+ *  topological order once, each with the gates feeding it, so one linear
+ *  pass over those arrays evaluates the input vectors, with no events at
+ *  all.  Each pass evaluates 64 vectors, one per bit of a long: xor gates
+ *  are word xors, and threshold gates count their ones in bit slices and
+ *  compare the counts with the threshold.  Delays are ignored, and so is
+ *  the low-pass filter.  This only works for circuits without
+ *  combinational loops; the loops found while ordering the gates are
+ *  reported, each as a cycle of gate names.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see ParallelSimulation
+ */
+public class CycleSimulation {
+
+    private final Netlist net;
+    private final Errors errors;
+
+    // The input gates in id order, the order of the values in a vector
+    private final int[] inputs;
+
+    // How each gate is evaluated, a threshold of 1 is an or and a threshold
+    // equal to the number of inputs is an and
+    private static final byte XOR = 0;
+    private static final byte AND = 1;
+    private static final byte OR = 2;
+    private static final byte COUNT = 3;
+
+    // The xor and threshold gates in topological order; the gates feeding
+    // order[i] are source[first[i] .. first[i+1]-1], it is evaluated as
+    // op[i] says, and a threshold gate has threshold threshold[i]
+    private final int[] order;
+    private final int[] first;
+    private final int[] source;
+    private final byte[] op;
+    private final int[] threshold;
+
+    // The source of each wire into an output gate, in wire id order, and
+    // the output gate itself, these are the columns of the result
+    private final int[] outSource;
+    private final int[] outGate;
+
+    // The values of each gate, indexed by gate id, in 64 lanes: bit k of
+    // each word belongs to vector k
+    private final long[] value;
+
+    // Bit slices of the counts of ones in each lane, while a threshold
+    // gate is evaluated
+    private final long[] plane = new long[32];
+
+    // The number of combinational loops found
+    private int loops = 0;
+
+    /** Put the gates of a netlist in order, reporting any loops.
+     *  @param n the netlist
+     */
+    public CycleSimulation( Netlist n ) {
+        net = n;
+        errors = n.errors();
+        value = new long[n.gates];
+
+        // Count the wires into each gate and the inputs and outputs
+        final int[] fanIn = new int[n.gates];
+        int outs = 0;
+        for (int w = 0; w < n.wires; w++) {
+            final int dst = n.wireDestination( w );
+            fanIn[dst] = fanIn[dst] + 1;
+            if (n.kind( dst ) == Netlist.OUTPUT) outs = outs + 1;
+        }
+        int ins = 0;
+        int logic = 0;
+        for (int g = 0; g < n.gates; g++) {
+            if (n.kind( g ) == Netlist.INPUT) ins = ins + 1;
+            if (isLogic( g )) logic = logic + 1;
+        }
+        inputs = new int[ins];
+        ins = 0;
+        for (int g = 0; g < n.gates; g++) {
+            if (n.kind( g ) == Netlist.INPUT) inputs[ins++] = g;
+        }
+        outSource = new int[outs];
+        outGate = new int[outs];
+        outs = 0;
+        for (int w = 0; w < n.wires; w++) {
+            if (n.kind( n.wireDestination( w ) ) == Netlist.OUTPUT) {
+                outSource[outs] = n.wireSource( w );
+                outGate[outs] = n.wireDestination( w );
+                outs = outs + 1;
+            }
+        }
+
+        // The wires into each gate, grouped by destination
+        final int[] inStart = new int[n.gates + 1];
+        for (int g = 0; g < n.gates; g++) {
+            inStart[g + 1] = inStart[g] + fanIn[g];
+        }
+        final int[] inWire = new int[n.wires];
+        final int[] fill = new int[n.gates];
+        for (int w = 0; w < n.wires; w++) {
+            final int dst = n.wireDestination( w );
+            inWire[inStart[dst] + fill[dst]] = w;
+            fill[dst] = fill[dst] + 1;
+        }
+
+        // Order the logic gates, each after every logic gate feeding it
+        final int[] waiting = new int[n.gates];
+        final int[] ready = new int[logic];
+        int readyCount = 0;
+        for (int g = 0; g < n.gates; g++) {
+            if (!isLogic( g )) continue;
+            for (int i = inStart[g]; i < inStart[g + 1]; i++) {
+                if (isLogic( n.wireSource( inWire[i] ) )) {
+                    waiting[g] = waiting[g] + 1;
+                }
+            }
+            if (waiting[g] == 0) ready[readyCount++] = g;
+        }
+        for (int r = 0; r < readyCount; r++) {
+            final int g = ready[r];
+            for (int i = 0; i < n.fanOut( g ); i++) {
+                final int dst = n.wireDestination( n.fanWire( g, i ) );
+                if (!isLogic( dst )) continue;
+                waiting[dst] = waiting[dst] - 1;
+                if (waiting[dst] == 0) ready[readyCount++] = dst;
+            }
+        }
+        if (readyCount < logic) {
+            reportLoops( waiting, inStart, inWire );
+        }
+
+        // Flatten the gates feeding each gate, in that order
+        order = Arrays.copyOf( ready, readyCount );
+        first = new int[readyCount + 1];
+        source = new int[n.wires];
+        op = new byte[readyCount];
+        threshold = new int[readyCount];
+        int k = 0;
+        for (int i = 0; i < readyCount; i++) {
+            final int g = order[i];
+            first[i] = k;
+            for (int j = inStart[g]; j < inStart[g + 1]; j++) {
+                source[k++] = n.wireSource( inWire[j] );
+            }
+            threshold[i] = n.param( g );
+            if (n.kind( g ) == Netlist.XOR) {
+                op[i] = XOR;
+            } else if ((threshold[i] == fanIn[g]) && (fanIn[g] > 0)) {
+                op[i] = AND;
+            } else if (threshold[i] == 1) {
+                op[i] = OR;
+            } else {
+                op[i] = COUNT;
+            }
+        }
+        first[readyCount] = k;
+    }
+
+    /** The number of combinational loops found.
+     *  @return the count, 0 if the circuit can be simulated by cycles
+     */
+    public int loops() {
+        return loops;
+    }
+
+    /** The number of values in an input vector.
+     *  @return the number of input gates
+     */
+    public int inputCount() {
+        return inputs.length;
+    }
+
+    /** The number of values in a result.
+     *  @return the number of wires into output gates
+     */
+    public int outputCount() {
+        return outSource.length;
+    }
+
+    /** Find the steady state for 64 input vectors at once.
+     *  <p>
+     *  Vector k is lane k, bit k of each word.  The circuit must have no
+     *  loops.
+     *  @param lanes the values of each input gate, in id order
+     */
+    public void evaluate( long[] lanes ) {
+        for (int i = 0; i < inputs.length; i++) value[inputs[i]] = lanes[i];
+        for (int i = 0; i < order.length; i++) {
+            final int from = first[i];
+            final int to = first[i + 1];
+            long v;
+            switch (op[i]) {
+            case XOR:
+                v = 0;
+                for (int j = from; j < to; j++) v = v ^ value[source[j]];
+                break;
+            case AND:
+                v = -1L;
+                for (int j = from; j < to; j++) v = v & value[source[j]];
+                break;
+            case OR:
+                v = 0;
+                for (int j = from; j < to; j++) v = v | value[source[j]];
+                break;
+            default:
+                v = atLeast( threshold[i], from, to );
+            }
+            value[order[i]] = v;
+        }
+    }
+
+    /** The values arriving at an output gate after evaluate().
+     *  @param i the column, counting wires into output gates in id order
+     *  @return the value in each lane
+     */
+    public long output( int i ) {
+        return value[outSource[i]];
+    }
+
+    // In each lane, whether at least t of the gates source[from .. to-1]
+    // are one
+    private long atLeast( int t, int from, int to ) {
+        if (t == 0) return -1L;
+        if (t > to - from) return 0L;
+
+        // Count the ones, bit b of the count of each lane in plane[b]
+        final int planes = 32 - Integer.numberOfLeadingZeros( to - from );
+        for (int b = 0; b < planes; b++) plane[b] = 0;
+        for (int j = from; j < to; j++) {
+            long carry = value[source[j]];
+            for (int b = 0; (carry != 0) && (b < planes); b++) {
+                final long c = plane[b] & carry;
+                plane[b] = plane[b] ^ carry;
+                carry = c;
+            }
+        }
+
+        // Compare the counts with t, from the top bit down
+        long greater = 0;
+        long equal = -1L;
+        for (int b = planes - 1; b >= 0; b--) {
+            if (((t >> b) & 1) != 0) {
+                equal = equal & plane[b];
+            } else {
+                greater = greater | (equal & plane[b]);
+                equal = equal & ~plane[b];
+            }
+        }
+        return greater | equal;
+    }
+
+    /** Simulate every vector in a vector file.
+     *  <p>
+     *  Each line holds one vector, a 0 or 1 for each input gate in the
+     *  order the gates were declared, with blanks allowed between them
+     *  and -- starting a comment.  Each result line repeats the vector
+     *  and gives the values arriving at the output gates, in the order of
+     *  the wires into them; a comment line names both columns first.
+     *  Vectors are simulated 64 at a time.
+     *  @param sc the scanner to read the vectors from
+     *  @param out where the results go
+     *  @return the number of vectors simulated
+     */
+    public long run( ByteScanner sc, PrintStream out ) {
+        if (loops > 0) {
+            errors.fatal( "Combinational loops, can't simulate by cycles" );
+        }
+        final StringBuilder b = new StringBuilder( "-- inputs" );
+        for (int g: inputs) b.append( ' ' ).append( net.name( g ) );
+        b.append( " outputs" );
+        for (int g: outGate) b.append( ' ' ).append( net.name( g ) );
+        out.println( b );
+
+        final int[] vector = new int[inputs.length];
+        final long[] lanes = new long[inputs.length];
+        int lane = 0;
+        long count = 0;
+        while (sc.hasNext()) {
+            final String token = sc.next();
+            errors.setLine( sc.line() );
+            String text = token + " " + sc.restOfLine();
+            final int comment = text.indexOf( "--" );
+            if (comment >= 0) text = text.substring( 0, comment );
+            if (!scanVector( text, vector )) continue;
+            for (int i = 0; i < vector.length; i++) {
+                lanes[i] = lanes[i] | ((long)vector[i] << lane);
+            }
+            lane = lane + 1;
+            if (lane == 64) {
+                print( lanes, lane, out, b );
+                lane = 0;
+            }
+            count = count + 1;
+        }
+        if (lane > 0) print( lanes, lane, out, b );
+        errors.setLine( 0 );
+        return count;
+    }
+
+    // Evaluate the vectors in the first n lanes, print them and their
+    // results, and clear the lanes
+    private void print(
+        long[] lanes, int n, PrintStream out, StringBuilder b
+    ) {
+        evaluate( lanes );
+        for (int k = 0; k < n; k++) {
+            b.setLength( 0 );
+            for (long v: lanes) b.append( (char)('0' + ((v >>> k) & 1)) );
+            b.append( ' ' );
+            for (int i = 0; i < outSource.length; i++) {
+                b.append( (char)('0' + ((output( i ) >>> k) & 1)) );
+            }
+            out.println( b );
+        }
+        Arrays.fill( lanes, 0 );
+    }
+
+    // Read the values of a vector from text, false if there is none
+    private boolean scanVector( String text, int[] vector ) {
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt( i );
+            if ((c == ' ') || (c == '\t')) continue;
+            if ((c != '0') && (c != '1')) {
+                errors.warn( "Vector " + text.trim() + ": 0 or 1 expected" );
+                return false;
+            }
+            if (n < vector.length) vector[n] = c - '0';
+            n = n + 1;
+        }
+        if (n == 0) return false;
+        if (n != vector.length) {
+            errors.warn( "Vector " + text.trim() + ": " + vector.length
+                + " values expected" );
+            return false;
+        }
+        return true;
+    }
+
+    // Is gate g an xor or threshold gate
+    private boolean isLogic( int g ) {
+        final byte k = net.kind( g );
+        return (k == Netlist.XOR) || (k == Netlist.THRESHOLD);
+    }
+
+    // Report each loop among the gates still waiting for their inputs.
+    // Each of them is fed by another, so following those back from any
+    // of them must come round to a gate seen before.
+    private void reportLoops( int[] waiting, int[] inStart, int[] inWire ) {
+        final int[] seen = new int[net.gates];
+        final int[] path = new int[net.gates];
+        int walk = 0;
+        for (int g = 0; g < net.gates; g++) {
+            if ((waiting[g] == 0) || (seen[g] != 0)) continue;
+            walk = walk + 1;
+            int length = 0;
+            int h = g;
+            while (seen[h] == 0) {
+                seen[h] = walk;
+                path[length++] = h;
+                h = waitingSource( h, waiting, inStart, inWire );
+            }
+            if (seen[h] != walk) continue;  // came round to an older loop
+
+            // The loop is the path from h on, fed back to front
+            int from = length - 1;
+            while (path[from] != h) from = from - 1;
+            final StringBuilder b = new StringBuilder();
+            for (int i = length - 1; i >= from; i--) {
+                b.append( net.name( path[i] ) ).append( " -> " );
+            }
+            b.append( net.name( path[length - 1] ) );
+            errors.warn( "Combinational loop " + b );
+            loops = loops + 1;
+        }
+    }
+
+    // A gate feeding g that is itself still waiting for its inputs
+    private int waitingSource(
+        int g, int[] waiting, int[] inStart, int[] inWire
+    ) {
+        for (int i = inStart[g]; i < inStart[g + 1]; i++) {
+            final int s = net.wireSource( inWire[i] );
+            if (isLogic( s ) && (waiting[s] > 0)) return s;
+        }
+        return g;  // never happens, every waiting gate has such a source
+    }
+}
@@ -1,46 +1,87 @@
 // Errors.java
 
+import java.io.PrintStream;
+
 /** Error reporting package.
  *  <p>
- *  Provide a standard prefix and behavior for error reporting.
+ *  Provide a standard prefix and behavior for error reporting.  Each
+ *  simulation has its own Errors, so each counts its own warnings.
  *  @author Piotr Smietana
- *  @version 2019-03-03
+ *  @version 2026-10-18
  */
 public class Errors {
 
-    // Prefix string for all error messages
-    private static String prefix = "???: ";
+    /** Thrown by fatal() once the message has been output.
+     *  <p>
+     *  Main programs catch it and exit; a batch of simulations catches it
+     *  and goes on with the next one.
+     */
+    public static class FatalError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        FatalError( String m ) {
+            super( m );
+        }
+    }
+
+    // Prefix string for all error messages, and where they go
+    private final String prefix;
+    private final PrintStream out;
 
     // Number of warnings
-    private static int warnCount = 0;
+    private int warnCount = 0;
+
+    // Line number to include in error messages, 0 for none
+    private int line = 0;
 
-    /** Set prefix on error reports, should be done before any error reports.
+    /** Construct an error reporter that writes to System.err.
      *  @param p the prefix on any error messages
      */
-    public static void setPrefix( String p ) {
+    public Errors( String p ) {
+        this( p, System.err );
+    }
+
+    /** Construct an error reporter.
+     *  @param p the prefix on any error messages
+     *  @param o where the messages go
+     */
+    public Errors( String p, PrintStream o ) {
         prefix = p;
+        out = o;
+    }
+
+    /** Set the line number included in error reports.
+     *  @param n the line number the messages are about, or 0 for none
+     */
+    public void setLine( int n ) {
+        line = n;
     }
 
     /** Report nonfatal errors, output a message and return.
      *  @param m the message to output
      */
-    public static void warn( String m ) {
-        System.err.println( prefix + ": " + m );
+    public void warn( String m ) {
+        if (line > 0) {
+            out.println( prefix + ": line " + line + ": " + m );
+        } else {
+            out.println( prefix + ": " + m );
+        }
         warnCount = warnCount + 1;
     }
 
     /** Report the number of warnings that have been issued.
      *  @return the count
      */
-    public static int warnings() {
+    public int warnings() {
         return warnCount;
     }
 
-    /** Report fatal errors, output a message and crash.
+    /** Report fatal errors, output a message and abandon the simulation.
      *  @param m the message to output
+     *  @throws FatalError always
      */
-    public static void fatal( String m ) {
+    public void fatal( String m ) {
         warn( m );
-        System.exit( 1 );
+        throw new FatalError( m );
     }
 }
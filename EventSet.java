@@ -0,0 +1,337 @@
+// EventSet.java
+
+import java.util.Arrays;
+
+/** Pending event sets for the simulation framework.
+ *  <p>
+ *  Event records live in pooled slots held in parallel primitive arrays,
+ *  so once the pool has grown to the peak number of pending events,
+ *  scheduling allocates nothing.  An event either carries an Action or
+ *  is a typed event, a (kind, target, value) triple of ints that the
+ *  simulation hands to its Dispatcher.  Subclasses decide how the slots are
+ *  ordered; events with equal times come out in the order they were added.
+ *  An event added with add( t, sq, ... ) can be cancelled through its
+ *  slot while it is pending.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Simulation
+ *  @see HeapEventSet
+ *  @see CalendarQueue
+ */
+public abstract class EventSet {
+
+    // Initial number of slots in the pool
+    private static final int INITIAL = 64;
+
+    /** The time of the event in each slot.
+     */
+    protected long[] time = new long[INITIAL];
+
+    /** The sequence number of the event in each slot, used to break ties.
+     */
+    protected long[] seq = new long[INITIAL];
+
+    /** The action of the event in each slot, null for typed events.
+     */
+    protected Simulation.Action[] act = new Simulation.Action[INITIAL];
+
+    // The kind, target and value of the typed event in each slot
+    private int[] kind = new int[INITIAL];
+    private int[] target = new int[INITIAL];
+    private int[] value = new int[INITIAL];
+
+    // Chain of free slots, linked through nextFree, -1 marks the end
+    private int[] nextFree = new int[INITIAL];
+    private int freeList = -1;
+
+    // Number of slots ever handed out, slots beyond this are unused
+    private int used = 0;
+
+    // Sequence number for the next event added
+    private long nextSeq = 0;
+
+    // Number of events in the set, and the most there have ever been
+    private int count = 0;
+    private int peak = 0;
+
+    /** Add an event to the set.
+     *  @param t the time at which the event should be triggered
+     *  @param a the Action to trigger
+     */
+    public final void add( long t, Simulation.Action a ) {
+        final int s = allocate();
+        time[s] = t;
+        seq[s] = nextSeq;
+        act[s] = a;
+        nextSeq = nextSeq + 1;
+        count = count + 1;
+        if (count > peak) peak = count;
+        insert( s );
+    }
+
+    /** Add a typed event to the set.
+     *  @param t the time at which the event should be dispatched
+     *  @param k the kind of event
+     *  @param target the target of the event
+     *  @param v the value carried by the event
+     */
+    public final void add( long t, int k, int target, int v ) {
+        final int s = allocate();
+        time[s] = t;
+        seq[s] = nextSeq;
+        kind[s] = k;
+        this.target[s] = target;
+        value[s] = v;
+        nextSeq = nextSeq + 1;
+        count = count + 1;
+        if (count > peak) peak = count;
+        insert( s );
+    }
+
+    /** Add a typed event with a sequence number chosen by the caller.
+     *  <p>
+     *  This lets an engine that shares out events among several sets keep
+     *  one sequence for all of them; the normal add() methods use the set's
+     *  own sequence.
+     *  @param t the time at which the event should be dispatched
+     *  @param sq the sequence number, used to order events with equal times
+     *  @param k the kind of event
+     *  @param target the target of the event
+     *  @param v the value carried by the event
+     *  @return the slot holding the event
+     */
+    public final int add( long t, long sq, int k, int target, int v ) {
+        final int s = allocate();
+        time[s] = t;
+        seq[s] = sq;
+        kind[s] = k;
+        this.target[s] = target;
+        value[s] = v;
+        count = count + 1;
+        if (count > peak) peak = count;
+        insert( s );
+        return s;
+    }
+
+    /** Take a sequence number for an event that will be added later.
+     *  <p>
+     *  An event added with this number through add( t, sq, k, target, v )
+     *  is ordered as though it had been added now.
+     *  @return the sequence number
+     */
+    public final long reserve() {
+        final long sq = nextSeq;
+        nextSeq = nextSeq + 1;
+        return sq;
+    }
+
+    /** The sequence number the next event added will get.
+     *  @return the sequence number
+     */
+    public final long sequence() {
+        return nextSeq;
+    }
+
+    /** Set the sequence number of the next event added, when the events
+     *  of a saved set are added back.
+     *  @param sq the sequence number
+     */
+    public final void setSequence( long sq ) {
+        nextSeq = sq;
+    }
+
+    /** The slots of all the pending events, in no particular order.
+     *  @return a new array of the slots
+     */
+    public final int[] slots() {
+        final int[] a = new int[count];
+        fill( a );
+        return a;
+    }
+
+    /** Take a pending event out of the set before its time.
+     *  <p>
+     *  The slot is handed back at once, so it must not be used again.
+     *  @param s the slot returned by add() when the event was added
+     */
+    public final void cancel( int s ) {
+        delete( s );
+        count = count - 1;
+        release( s );
+    }
+
+    /** Find the earliest event without removing it; the set must not be
+     *  empty.
+     *  @return the slot holding the event
+     */
+    public final int first() {
+        return peekFirst();
+    }
+
+    /** Remove the earliest event from the set.
+     *  <p>
+     *  The slot stays valid until it is handed back with release().
+     *  @return the slot holding the event
+     */
+    public final int remove() {
+        count = count - 1;
+        return removeFirst();
+    }
+
+    /** Hand back a slot obtained from remove() so that it can be reused.
+     *  @param s the slot
+     */
+    public final void release( int s ) {
+        act[s] = null;
+        nextFree[s] = freeList;
+        freeList = s;
+    }
+
+    /** The time of the event in a slot.
+     *  @param s the slot
+     *  @return the time
+     */
+    public final long time( int s ) {
+        return time[s];
+    }
+
+    /** The sequence number of the event in a slot.
+     *  @param s the slot
+     *  @return the sequence number
+     */
+    public final long seq( int s ) {
+        return seq[s];
+    }
+
+    /** Renumber a pending event.
+     *  <p>
+     *  The new number must not change the order of the pending events.
+     *  @param s the slot
+     *  @param sq the new sequence number
+     */
+    public final void setSeq( int s, long sq ) {
+        seq[s] = sq;
+    }
+
+    /** The action of the event in a slot.
+     *  @param s the slot
+     *  @return the Action, or null if the event is a typed event
+     */
+    public final Simulation.Action action( int s ) {
+        return act[s];
+    }
+
+    /** The kind of the typed event in a slot.
+     *  @param s the slot
+     *  @return the kind
+     */
+    public final int kind( int s ) {
+        return kind[s];
+    }
+
+    /** The target of the typed event in a slot.
+     *  @param s the slot
+     *  @return the target
+     */
+    public final int target( int s ) {
+        return target[s];
+    }
+
+    /** The value of the typed event in a slot.
+     *  @param s the slot
+     *  @return the value
+     */
+    public final int value( int s ) {
+        return value[s];
+    }
+
+    /** Test for pending events.
+     *  @return true if there are none
+     */
+    public final boolean isEmpty() {
+        return count == 0;
+    }
+
+    /** The number of pending events.
+     *  @return the count
+     */
+    public final int size() {
+        return count;
+    }
+
+    /** The largest number of events there have been pending at once.
+     *  @return the count
+     */
+    public final int peakSize() {
+        return peak;
+    }
+
+    /** The number of slots in the pool.
+     *  @return the capacity
+     */
+    protected final int capacity() {
+        return time.length;
+    }
+
+    /** Compare the events in two slots.
+     *  @param a one slot
+     *  @param b another slot
+     *  @return true if the event in a must be triggered before that in b
+     */
+    protected final boolean before( int a, int b ) {
+        if (time[a] != time[b]) return time[a] < time[b];
+        return seq[a] < seq[b];
+    }
+
+    /** Put a filled in slot into the ordering structure.
+     *  @param s the slot
+     */
+    protected abstract void insert( int s );
+
+    /** Take the earliest slot out of the ordering structure.
+     *  @return the slot
+     */
+    protected abstract int removeFirst();
+
+    /** Find the earliest slot, leaving it in the ordering structure.
+     *  @return the slot
+     */
+    protected abstract int peekFirst();
+
+    /** Take any slot out of the ordering structure.
+     *  @param s the slot
+     */
+    protected abstract void delete( int s );
+
+    /** Put every slot in the ordering structure into an array.
+     *  @param a the array, exactly as long as the number of slots
+     */
+    protected abstract void fill( int[] a );
+
+    /** Called whenever the pool grows, so subclasses can grow their arrays.
+     *  @param capacity the new number of slots
+     */
+    protected abstract void resized( int capacity );
+
+    // Get a free slot, growing the pool if there are none
+    private int allocate() {
+        if (freeList >= 0) {
+            final int s = freeList;
+            freeList = nextFree[s];
+            return s;
+        }
+        if (used == time.length) {
+            final int capacity = used * 2;
+            time = Arrays.copyOf( time, capacity );
+            seq = Arrays.copyOf( seq, capacity );
+            act = Arrays.copyOf( act, capacity );
+            kind = Arrays.copyOf( kind, capacity );
+            target = Arrays.copyOf( target, capacity );
+            value = Arrays.copyOf( value, capacity );
+            nextFree = Arrays.copyOf( nextFree, capacity );
+            resized( capacity );
+        }
+        used = used + 1;
+        return used - 1;
+    }
+}
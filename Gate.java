@@ -1,13 +1,10 @@
 // Gate.java
 
-import java.util.Iterator;
-import java.util.Scanner;
-import java.util.List;
 import java.util.LinkedList;
 
 /** Subclasses of Gates are joined by Wires.
  *  @author Piotr Smietana
- *  @version 2019-04-03
+ *  @version 2026-10-18
  *  @see Wire
  *  @see InputCountGate
  *  @see InputGate
@@ -15,31 +12,14 @@ import java.util.LinkedList;
  */
 public abstract class Gate {
 
-    // List of all of the gates in the universe
-    private static final List <Gate> allGates = new LinkedList <> ();
-
-    /** Allow outsiders to iterate over all the gates.
-     *  @return an Iterator allowing access to gates
-     */
-    public static Iterator <Gate> iterator() {
-        return allGates.iterator();
-    }
-
-    /** Look up a gate by name.
-     *  @param n the name of the gate, possibly null (matches nothing)
-     *  @return the Gate with that name, or null if no match
-     */
-    public static Gate findGate( String n ) {
-        for (Gate g: allGates) {
-            if (g.name.equals( n )) return g;
-        }
-        return null;
-    }
-
     /** The name of this gate.
       */
     public final String name;
 
+    /** The id of this gate, its index in the list of all gates.
+      */
+    public final int id;
+
     /** Where the outputs from this gate go.
      */
     protected final LinkedList <Wire> outgoing = new LinkedList <> ();
@@ -49,16 +29,29 @@ public abstract class Gate {
     protected int inCount = 0;
 
     /** Constructor, used only from within subclasses.
+     *  @param ctx the context the gate belongs to
+     *  @param n the name of the new gate
+     */
+    protected Gate( SimulationContext ctx, String n ) {
+        name = n;
+        id = ctx.gateCount();
+    }
+
+    /** Constructor of a gate that takes no id of its own, a port of a
+     *  subcircuit.
      *  @param n the name of the new gate
+     *  @param i the id standing for it
      */
-    protected Gate( String n ) {
+    protected Gate( String n, int i ) {
         name = n;
+        id = i;
     }
 
     /** Build a new Gate and add it to the list of gates.
+     *  @param ctx the context the gate belongs to
      *  @param sc the scanner used to get the attributes of this gate
      */
-    public static void make( Scanner sc ) {
+    public static void make( SimulationContext ctx, ByteScanner sc ) {
         // First worry about the gate name
         final String name
             = ScanSupport.scanName( sc, () -> "Gate has missing name" );
@@ -68,8 +61,8 @@ public abstract class Gate {
             );
             return;
         }
-        if (findGate( name ) != null) {
-            Errors.warn( "Gate " + name + ": name reused" );
+        if (ctx.findGate( name ) != null) {
+            ctx.errors.warn( "Gate " + name + ": name reused" );
             ScanSupport.finishLine(
                 sc, () -> "Gate " + name + ": followed by"
             );
@@ -89,15 +82,15 @@ public abstract class Gate {
 
         // Finally construct the right kind of gate
         if ("xor".equals( kind )) {
-            allGates.add( new XorGate( sc, name ) );
+            ctx.add( new XorGate( ctx, sc, name ) );
         } else if ("threshold".equals( kind )) {
-            allGates.add( new ThresholdGate( sc, name ) );
+            ctx.add( new ThresholdGate( ctx, sc, name ) );
         } else if ("input".equals( kind )) {
-            allGates.add( new InputGate( sc, name ) );
+            ctx.add( new InputGate( ctx, sc, name ) );
         } else if ("output".equals( kind )) {
-            allGates.add( new OutputGate( sc, name ) );
+            ctx.add( new OutputGate( ctx, sc, name ) );
         } else {
-            Errors.warn( "Gate " + name + " " + kind + ": kind unknown" );
+            ctx.errors.warn( "Gate " + name + " " + kind + ": kind unknown" );
             ScanSupport.finishLine(
                 sc, () -> "Gate " + name + " " + kind + ": followed by"
             );
@@ -106,9 +99,15 @@ public abstract class Gate {
 
     /** Every subclass of gate offers a sanity check.
      *  <p>
-     *  It should call Errors.warn() for each failure it detects
+     *  It should call errors.warn() for each failure it detects
+     *  @param errors where failures are reported
+     */
+    public abstract void sanityCheck( Errors errors );
+
+    /** Every subclass of gate records its attributes in the netlist.
+     *  @param net the netlist being compiled
      */
-    public abstract void sanityCheck();
+    abstract void compile( Netlist net );
 
     /** Connect a wire as an input to this gate.
      *  @param w the wire
@@ -124,29 +123,17 @@ public abstract class Gate {
         outgoing.add( w );
     }
 
-    /** Gate toString() method.
+    /** Connect the wires of a subcircuit port bound to this gate.
+     *  @param port the port
      */
-    public String toString() {
-        return "Gate " + name;
+    public void connectPort( Gate port ) {
+        inCount = inCount + port.inCount;
+        outgoing.addAll( port.outgoing );
     }
 
-    // Simulation methods
-
-    /** Tell the gate that one of its inputs has changed.
-     *  <p>
-     *  Each subclass must implement this method.
-     *  @param value the new value of that input
-     */
-    public abstract void inputChange( int value );
-
-    /** Actually change the output.
-     *  @param value the new value of that input
+    /** Gate toString() method.
      */
-    protected void outputChange( int value ) {
-        final int comp = 1 - value;
-        System.out.println(
-            "time " + Simulation.time + " " + comp + "->" + value + " " + this
-        );
-        for (Wire w: outgoing) w.inputChange( value );
+    public String toString() {
+        return "Gate " + name;
     }
 }
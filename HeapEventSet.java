@@ -0,0 +1,111 @@
+// HeapEventSet.java
+
+import java.util.Arrays;
+
+/** Event set kept as a binary heap of slot numbers.
+ *  <p>
+ *  Insertion and removal take time proportional to the log of the number
+ *  of pending events, with no allocation in steady state.  The heap keeps
+ *  the position of each slot, so a pending event can be cancelled as
+ *  cheaply as the earliest one can be removed.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see EventSet
+ */
+public class HeapEventSet extends EventSet {
+
+    // The heap, heap[0] is the earliest event, heap[i] precedes its children
+    private int[] heap = new int[capacity()];
+    private int size = 0;
+
+    // The position of each slot in the heap, heap[where[s]] == s
+    private int[] where = new int[capacity()];
+
+    /** Put a filled in slot into the heap.
+     *  @param s the slot
+     */
+    protected void insert( int s ) {
+        size = size + 1;
+        siftUp( size - 1, s );
+    }
+
+    /** Take the earliest slot out of the heap.
+     *  @return the slot
+     */
+    protected int removeFirst() {
+        final int first = heap[0];
+        size = size - 1;
+        if (size > 0) siftDown( 0, heap[size] );
+        return first;
+    }
+
+    /** Find the earliest slot, leaving it in the heap.
+     *  @return the slot
+     */
+    protected int peekFirst() {
+        return heap[0];
+    }
+
+    /** Put every slot in the heap into an array.
+     *  @param a the array
+     */
+    protected void fill( int[] a ) {
+        System.arraycopy( heap, 0, a, 0, size );
+    }
+
+    /** Take any slot out of the heap.
+     *  @param s the slot
+     */
+    protected void delete( int s ) {
+        final int i = where[s];
+        size = size - 1;
+        if (i == size) return;
+        // The last slot fills the hole, and moves whichever way it must
+        final int last = heap[size];
+        if ((i > 0) && before( last, heap[(i - 1) >> 1] )) {
+            siftUp( i, last );
+        } else {
+            siftDown( i, last );
+        }
+    }
+
+    /** Grow the heap along with the pool.
+     *  @param capacity the new number of slots
+     */
+    protected void resized( int capacity ) {
+        heap = Arrays.copyOf( heap, capacity );
+        where = Arrays.copyOf( where, capacity );
+    }
+
+    // Put s into the hole at i, moving parents down until s fits
+    private void siftUp( int i, int s ) {
+        while (i > 0) {
+            final int parent = (i - 1) >> 1;
+            final int p = heap[parent];
+            if (!before( s, p )) break;
+            heap[i] = p;
+            where[p] = i;
+            i = parent;
+        }
+        heap[i] = s;
+        where[s] = i;
+    }
+
+    // Put s into the hole at i, moving children up until s fits
+    private void siftDown( int i, int s ) {
+        for (;;) {
+            int child = (i << 1) + 1;
+            if (child >= size) break;
+            if ((child + 1 < size) && before( heap[child + 1], heap[child] )) {
+                child = child + 1;
+            }
+            final int c = heap[child];
+            if (!before( c, s )) break;
+            heap[i] = c;
+            where[c] = i;
+            i = child;
+        }
+        heap[i] = s;
+        where[s] = i;
+    }
+}
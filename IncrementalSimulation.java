@@ -0,0 +1,356 @@
+// IncrementalSimulation.java
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Sequential engine that re-simulates only what an edit can change.
+ *  <p>
+ *  Each run leaves behind a cache, a binary trace of every gate and wire,
+ *  whose header holds the netlist it was simulated from.  The next run
+ *  compares its netlist with that one, gate by gate and wire by wire,
+ *  matching gates by name and wires by their source and destination.
+ *  Only the gates whose attributes or input wires changed, and the fan-out
+ *  cone of those, can behave differently, so only they are simulated;
+ *  the wires into the cone from the rest of the circuit are driven by the
+ *  recorded output changes of their sources, and the recorded changes of
+ *  the rest are merged back in by time.  The trace has the same changes
+ *  at each time as a full run, though changes at the same time may come
+ *  in another order.  Without a usable cache, or when the time base has
+ *  changed, the whole circuit is simulated.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see BinaryTrace
+ */
+public class IncrementalSimulation {
+
+    private final Netlist net;
+    private final Errors errors;
+
+    // The cache, and the file each new cache is written to first
+    private final Path cache;
+    private final Path temporary;
+
+    // The gates simulated by the last run, or -1 after a full run
+    private int coneSize = -1;
+
+    /** Construct an incremental engine for a netlist.
+     *  @param n the netlist, with its trace sink and selection set
+     *  @param cacheName the cache file, read if it exists and then replaced
+     */
+    public IncrementalSimulation( Netlist n, String cacheName ) {
+        net = n;
+        errors = n.errors();
+        cache = Paths.get( cacheName );
+        temporary = Paths.get( cacheName + ".tmp" );
+    }
+
+    /** The number of gates simulated by the last run.
+     *  @return the count, or -1 if the whole circuit was simulated
+     */
+    public int coneSize() {
+        return coneSize;
+    }
+
+    /** Run the simulation to the end, reporting the selected changes to
+     *  the trace sink of the netlist, and replace the cache.
+     *  @param sim the simulation, with an empty event set
+     */
+    public void run( Simulation sim ) {
+        final TraceSink sink = net.traceSink();
+        final boolean[] gateSelected = new boolean[net.gates];
+        final boolean[] wireSelected = new boolean[net.wires];
+        for (int g = 0; g < net.gates; g++) {
+            gateSelected[g] = net.gateTraced( g );
+        }
+        for (int w = 0; w < net.wires; w++) {
+            wireSelected[w] = net.wireTraced( w );
+        }
+        net.traceAll();
+        try (OutputStream o = new FileOutputStream( temporary.toFile() )) {
+            final BinaryTrace record = new BinaryTrace( o, net );
+            final TraceSink tee
+                = new Tee( record, sink, gateSelected, wireSelected );
+            final Netlist old = cachedNetlist();
+            if ((old == null) || (old.ticksPerUnit() != net.ticksPerUnit())) {
+                coneSize = -1;
+                net.setTrace( tee );
+                net.launch( sim );
+                sim.run();
+            } else {
+                rerun( sim, old, tee );
+            }
+            record.close();
+        } catch (IOException e) {
+            errors.fatal( "Can't write the cache: " + e.getMessage() );
+        }
+        try {
+            Files.move( temporary, cache, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE );
+        } catch (IOException e) {
+            errors.fatal( "Can't write the cache: " + e.getMessage() );
+        }
+        net.setTrace( sink );
+    }
+
+    // The netlist the cache was simulated from, or null if there is none
+    // or it can't be read to the end, so a damaged cache means a full run
+    private Netlist cachedNetlist() {
+        try (Records r = new Records( cache )) {
+            while (r.next()) {
+                // Only checking
+            }
+            return r.of;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Simulate the cone of the changes from the old netlist, and merge its
+    // changes with the recorded ones of the rest into the tee
+    private void rerun( Simulation sim, Netlist old, TraceSink tee ) {
+        // Match the gates by name and the wires by source, destination and
+        // their order among the wires between the same gates
+        final int[] newGate = new int[old.gates];
+        for (int g = 0; g < old.gates; g++) {
+            newGate[g] = net.find( old.name( g ) );
+        }
+        final String[] oldKey = wireKeys( old );
+        final HashMap <String, Integer> oldWire = new HashMap <> ();
+        for (int v = 0; v < old.wires; v++) oldWire.put( oldKey[v], v );
+        final String[] newKey = wireKeys( net );
+        final int[] newWire = new int[old.wires];
+        Arrays.fill( newWire, -1 );
+        final boolean[] cone = new boolean[net.gates];
+        for (int w = 0; w < net.wires; w++) {
+            final Integer v = oldWire.get( newKey[w] );
+            if ((v == null) || (old.wireDelay( v ) != net.wireDelay( w ))) {
+                cone[net.wireDestination( w )] = true;
+            }
+            if (v != null) newWire[v] = w;
+        }
+        for (int v = 0; v < old.wires; v++) {
+            if (newWire[v] >= 0) continue;
+            final int dst = newGate[old.wireDestination( v )];
+            if (dst >= 0) cone[dst] = true;
+        }
+        for (int g = 0; g < net.gates; g++) {
+            final int v = old.find( net.name( g ) );
+            if ((v < 0) || (old.kind( v ) != net.kind( g ))
+                || (old.delay( v ) != net.delay( g ))
+                || (old.param( v ) != net.param( g ))
+                || (old.changesLeft( v ) != net.changesLeft( g ))
+            ) {
+                cone[g] = true;
+            }
+        }
+        coneSize = closeCone( cone );
+
+        // Simulate the cone alongside the recorded changes, in time order:
+        // each recorded change outside the cone is passed on once the cone
+        // has been simulated up to its time, and those of gates feeding the
+        // cone are sent on along the wires into it
+        net.setTrace( tee );
+        net.launchCone( sim, cone );
+        // The cache was read through once already, so this only fails if
+        // reading it does
+        try (Records r = new Records( cache )) {
+            while (r.next()) {
+                sim.run( r.time );
+                if (r.tag == BinaryTrace.GATE) {
+                    r.id = newGate[r.id];
+                    if ((r.id < 0) || cone[r.id]) continue;
+                    feedCone( sim, r.id, r.time, r.value, cone );
+                } else {
+                    r.id = newWire[r.id];
+                    if ((r.id < 0) || cone[net.wireDestination( r.id )]) {
+                        continue;
+                    }
+                }
+                r.emit( tee );
+            }
+        } catch (IOException e) {
+            errors.fatal( "Can't read the cache: " + e.getMessage() );
+        }
+        sim.run();
+    }
+
+    // Send a recorded output change of gate g, outside the cone, along the
+    // wires from it into the cone
+    private void feedCone(
+        Simulation sim, int g, long time, int value, boolean[] cone
+    ) {
+        for (int i = 0; i < net.fanOut( g ); i++) {
+            final int w = net.fanWire( g, i );
+            if (cone[net.wireDestination( w )]) {
+                sim.schedule( time + net.wireDelay( w ) - sim.time,
+                    Netlist.WIRE_OUTPUT, w, value );
+            }
+        }
+    }
+
+    // Add the fan-out of the gates in a cone to it, returning its size
+    private int closeCone( boolean[] cone ) {
+        final ArrayDeque <Integer> work = new ArrayDeque <> ();
+        int size = 0;
+        for (int g = 0; g < net.gates; g++) {
+            if (cone[g]) work.add( g );
+        }
+        while (!work.isEmpty()) {
+            final int g = work.poll();
+            size = size + 1;
+            for (int i = 0; i < net.fanOut( g ); i++) {
+                final int d = net.wireDestination( net.fanWire( g, i ) );
+                if (!cone[d]) {
+                    cone[d] = true;
+                    work.add( d );
+                }
+            }
+        }
+        return size;
+    }
+
+    // The key of each wire of a netlist, "source destination n" for the
+    // n-th wire between those gates
+    private static String[] wireKeys( Netlist n ) {
+        final HashMap <String, Integer> count = new HashMap <> ();
+        final String[] keys = new String[n.wires];
+        for (int w = 0; w < n.wires; w++) {
+            final String pair = n.name( n.wireSource( w ) ) + ' '
+                + n.name( n.wireDestination( w ) );
+            keys[w] = pair + ' ' + count.merge( pair, 1, Integer::sum );
+        }
+        return keys;
+    }
+
+    // The records of a binary trace file, one at a time, read through a
+    // buffer of its own, which the header is read from as a stream
+    private class Records implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate( 1 << 16 );
+
+        // The netlist in the header, which tells which gates are inputs
+        final Netlist of;
+
+        int tag;
+        int id;
+        long time;
+        int value;
+        int left;
+
+        Records( Path file ) throws IOException {
+            channel = FileChannel.open( file, StandardOpenOption.READ );
+            buf.flip();
+            try {
+                final DataInputStream in
+                    = new DataInputStream( new InputStream() {
+                        public int read() throws IOException {
+                            if (!buf.hasRemaining()) fill();
+                            if (!buf.hasRemaining()) return -1;
+                            return buf.get() & 0xFF;
+                        }
+                    } );
+                if ((in.readInt() != BinaryTrace.MAGIC)
+                    || (in.readInt() != BinaryTrace.VERSION)
+                ) {
+                    throw new IOException( file + ": not a binary trace" );
+                }
+                of = Netlist.read( in, errors );
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // Read the next record, returning false at the end
+        boolean next() throws IOException {
+            if (buf.remaining() < BinaryTrace.RECORD) fill();
+            if (!buf.hasRemaining()) return false;
+            try {
+                tag = buf.get();
+                id = buf.getInt();
+                time = buf.getLong();
+                value = buf.get();
+                if ((tag == BinaryTrace.GATE)
+                    && (of.kind( id ) == Netlist.INPUT)
+                ) {
+                    left = buf.getInt();
+                }
+                // Gate ids were checked by of.kind(), wire ids are here
+                if ((tag != BinaryTrace.GATE) && ((tag != BinaryTrace.WIRE)
+                    || (id < 0) || (id >= of.wires))
+                ) {
+                    throw new IOException( "Binary trace damaged" );
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException( "Binary trace damaged" );
+            }
+            return true;
+        }
+
+        // Pass the record on, its id being one of the current netlist
+        void emit( TraceSink sink ) {
+            if (tag == BinaryTrace.GATE) {
+                if (net.kind( id ) == Netlist.INPUT) {
+                    net.setChangesLeft( id, left );
+                }
+                sink.gateChange( time, id, value );
+            } else {
+                sink.wireChange( time, id, value );
+            }
+        }
+
+        // Move what is left of the buffer to its start, and read more
+        private void fill() throws IOException {
+            buf.compact();
+            while (buf.hasRemaining() && (channel.read( buf ) > 0)) {
+                // Until the buffer is full or the file ends
+            }
+            buf.flip();
+        }
+
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Records every change, and passes on the selected ones
+    private static class Tee extends TraceSink {
+        private final TraceSink record;
+        private final TraceSink selected;
+        private final boolean[] gate;
+        private final boolean[] wire;
+
+        Tee( TraceSink r, TraceSink s, boolean[] g, boolean[] w ) {
+            record = r;
+            selected = s;
+            gate = g;
+            wire = w;
+        }
+
+        public void gateChange( long time, int g, int value ) {
+            record.gateChange( time, g, value );
+            if (gate[g]) selected.gateChange( time, g, value );
+        }
+
+        public void wireChange( long time, int w, int value ) {
+            record.wireChange( time, w, value );
+            if (wire[w]) selected.wireChange( time, w, value );
+        }
+    }
+}
@@ -1,45 +1,70 @@
 // InputGate.java
 
-import java.util.Scanner;
-
 /** Input gates will provide input to the simulation.
  *  @author Piotr Smietana
- *  @version 2019-04-29
+ *  @version 2026-10-18
  *  @see Gate
  */
 public class InputGate extends Gate {
 
+    private final SimulationContext ctx;
     private float delay = Float.NaN;
     private int initial = 0;
     private int changeCount = 0;
 
+    // The initial value if it is x or z, otherwise 0
+    private char unknown = 0;
+
     /** Constructor, used only from within subclasses.
+     *  @param ctx the context the gate belongs to
      *  @param sc the scanner
      *  @param name the name of the new gate
      */
-    public InputGate( Scanner sc, String name ){
-        super( name );
-        initial = ScanSupport.scanPositiveInt( sc, () -> this.toString() );
+    public InputGate( SimulationContext ctx, ByteScanner sc, String name ){
+        super( ctx, name );
+        this.ctx = ctx;
+        scanAttributes( sc );
+    }
+
+    /** Replace the initial value, delay and change count of this gate.
+     *  <p>
+     *  This lets one circuit be simulated with different stimuli.
+     *  @param sc the scanner, positioned at the new attributes
+     */
+    public void restimulate( ByteScanner sc ) {
+        scanAttributes( sc );
+    }
+
+    // Scan the attributes of this gate, up to the end of the line
+    private void scanAttributes( ByteScanner sc ) {
+        initial = 0;
+        unknown = 0;
+        if (sc.hasNextName() && !sc.hasNextInt()) {
+            final String value = sc.next();
+            if ("x".equals( value ) || "z".equals( value )) {
+                unknown = value.charAt( 0 );
+            } else {
+                sc.errors().warn( this + " " + value + ": value unknown" );
+            }
+        } else {
+            initial = ScanSupport.scanPositiveInt( sc, () -> this.toString() );
+        }
         delay = ScanSupport.scanPositiveFloat( sc, () -> this.toString() );
         changeCount = ScanSupport.scanPositiveInt( sc, () -> this.toString() );
-        if (initial > 1) Errors.warn( this + ": initial value > 1" );
+        if (initial > 1) sc.errors().warn( this + ": initial value > 1" );
+        if ((unknown != 0) && !ctx.isFourValued()) {
+            sc.errors().warn( this + ": initial value " + unknown
+                + " needs -xz" );
+        }
         ScanSupport.finishLine( sc, () -> this + ": followed by" );
     }
 
     /** Every subclass of gate offers a sanity check.
+     *  @param errors where failures are reported
      */
-    public void sanityCheck() {
+    public void sanityCheck( Errors errors ) {
         if (inCount != 0) {
-            Errors.warn( this.toString() + ": has unexpected input wires" );
-        }
-        // Launch the simulation!
-        if (initial == 1) {
-            this.outputChange( 1 );
-        }
-        if (changeCount > 0) {
-            Simulation.schedule(
-                    delay, () -> this.nextChange( 1 - initial )
-            );
+            errors.warn( this.toString() + ": has unexpected input wires" );
         }
     }
 
@@ -47,30 +72,16 @@ public class InputGate extends Gate {
      */
     public String toString() {
         return super.toString() + " input "
-            + initial + " " + delay + " " + changeCount;
+            + ((unknown != 0) ? String.valueOf( unknown ) : initial) + " "
+            + delay + " " + changeCount;
     }
 
-    // Simulation methods
-
-    /** Tell the gate that one of its inputs has changed.
-     *  <p>
-     *  Each subclass must implement this method.
-     *  @param value the new value of that input
+    /** Record this gate's attributes in the netlist.
+     *  @param net the netlist being compiled
      */
-    public void inputChange( int value ) {
-        Errors.warn(this.toString() + ": impossible input change");
-    }
-
-    // Output change process for sequence of inputs
-    private void nextChange( int value ) {
-        changeCount = changeCount - 1;
-        // First change the output
-        this.outputChange( value );
-        // Second schedule the next change, if any
-        if (changeCount > 0) {
-            Simulation.schedule(
-                    delay, () -> this.nextChange( 1 - value )
-            );
-        }
+    void compile( Netlist net ) {
+        final int value = (unknown == 'x') ? Netlist.X
+            : (unknown == 'z') ? Netlist.Z : initial;
+        net.setGate( id, name, Netlist.INPUT, delay, value, changeCount );
     }
 }
@@ -1,43 +1,72 @@
 // LogicSimulator.java
 
-import java.io.FileInputStream;
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Iterator;
-import java.util.Scanner;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.function.Supplier;
 
 /** Main program.
  *  @author Piotr Smietana
- *  @version 2019-04-29
+ *  @version 2026-10-18
  *  @see Gate
  *  @see Wire
+ *  @see Netlist
+ *  @see SimulationContext
  */
 public class LogicSimulator {
 
-    // Build the logic circuit by scanning a source file
-    private static void buildLogic( Scanner sc ) {
+    /** Build the logic circuit of a context by scanning a source file.
+     *  <p>
+     *  The body of a subcircuit is built the same way, up to its end.
+     *  @param ctx the context
+     *  @param sc the scanner to read from
+     *  @return true if an end command stopped it, false at the end of file
+     */
+    static boolean buildLogic( SimulationContext ctx, ByteScanner sc ) {
         while (sc.hasNext()) {
             String command = sc.next();
+            ctx.errors.setLine( sc.line() );
             if ("--".equals( command )) {
-                if (sc.hasNextLine()) sc.nextLine();
+                sc.restOfLine();
             } else if ("gate".equals( command )) {
-                Gate.make( sc );
+                Gate.make( ctx, sc );
+            } else if ("define".equals( command )) {
+                Subcircuit.define( ctx, sc );
+            } else if ("instance".equals( command )) {
+                Subcircuit.instance( ctx, sc );
+            } else if ("end".equals( command ) && (ctx.body() != null)) {
+                ScanSupport.finishLine( sc, () -> "End: followed by" );
+                return true;
+            } else if ("trace".equals( command ) && (ctx.body() != null)) {
+                ctx.errors.warn( ctx.body() + ": trace not allowed" );
+                sc.restOfLine();
+            } else if ("trace".equals( command )) {
+                buildProbe( ctx, sc );
             } else if ("wire".equals( command )) {
                 // Because of multiple destinations, must get the source here
                 final String srcName
                     = ScanSupport.scanName( sc, () -> "Wire has no source" );
                 if (srcName != null) {
-                    final Gate source = Gate.findGate( srcName );
+                    final Gate source = ctx.findGate( srcName );
                     if (source != null) {
                         // Now build at least one wire and possibly more
-                        Wire.make( sc, source );
+                        Wire.make( ctx, sc, source );
                         while (sc.hasNextFloat()) {
-                            Wire.make( sc, source );
+                            Wire.make( ctx, sc, source );
                         }
                         ScanSupport.finishLine(
                             sc, () -> "Wire " + srcName + ": followed by"
                         );
                     } else {
-                        Errors.warn( "Wire " + srcName + ": undefined source" );
+                        ctx.errors.warn(
+                            "Wire " + srcName + ": undefined source"
+                        );
                         ScanSupport.finishLine(
                             sc, () -> "Wire " + srcName + ": followed by"
                         );
@@ -46,51 +75,490 @@ public class LogicSimulator {
                     ScanSupport.finishLine( sc, () -> "Wire: followed by" );
                 }
             } else {
-                Errors.warn( "Invalid command " + command );
+                ctx.errors.warn( "Invalid command " + command );
                 ScanSupport.finishLine( sc, () -> command + ": followed by" );
             }
         }
+        ctx.errors.setLine( 0 );
+        return false;
+    }
+
+    // Scan a trace directive, naming a gate or a source and destination
+    private static void buildProbe( SimulationContext ctx, ByteScanner sc ) {
+        // The destination is optional, so the directive ends with its line
+        final String[] names = ScanSupport.scanNames( sc );
+        if (names.length == 0) {
+            ctx.errors.warn( "Trace has no gate" );
+        } else if (names.length > 2) {
+            ctx.errors.warn( "Trace " + names[0] + " " + names[1]
+                + ": followed by " + names[2] );
+        } else {
+            addProbe( ctx, names[0], (names.length > 1) ? names[1] : null );
+        }
+    }
+
+    // Select a gate, or the wires from a source to a destination, to trace
+    private static void addProbe(
+        SimulationContext ctx, String srcName, String dstName
+    ) {
+        final int source = ctx.findId( srcName );
+        if (source < 0) {
+            ctx.errors.warn( "Trace " + srcName + ": undefined gate" );
+        } else if (dstName == null) {
+            ctx.addProbe( new int[] { source } );
+        } else {
+            final int destination = ctx.findId( dstName );
+            if (destination < 0) {
+                ctx.errors.warn( "Trace " + srcName + " " + dstName
+                    + ": undefined destination" );
+            } else {
+                ctx.addProbe( new int[] { source, destination } );
+            }
+        }
+    }
+
+    /** Select the probes in a -trace option, a list like a,b:c.
+     *  @param ctx the context
+     *  @param list the gates and source:destination pairs to trace
+     */
+    static void addProbes( SimulationContext ctx, String list ) {
+        for (String probe: list.split( "," )) {
+            final String[] names = probe.split( ":" );
+            if ((names.length > 2) || "".equals( names[0] )) {
+                ctx.errors.warn( "Trace " + probe + ": invalid" );
+            } else {
+                addProbe(
+                    ctx, names[0], (names.length > 1) ? names[1] : null
+                );
+            }
+        }
+    }
+
+    /** Limit the trace to the probes, if there are any, and the outputs.
+     *  @param ctx the context, with its netlist compiled
+     *  @param outputsOnly true to trace the values arriving at output gates
+     */
+    static void selectTrace(
+        SimulationContext ctx, boolean outputsOnly
+    ) {
+        if (!ctx.hasProbes() && !outputsOnly) return;
+        final Netlist net = ctx.netlist();
+        net.traceNone();
+        if (outputsOnly) net.traceOutputs();
+        for (Iterator <int[]> i = ctx.probes(); i.hasNext();) {
+            final int[] p = i.next();
+            if (p.length == 1) {
+                net.traceGate( p[0] );
+            } else {
+                net.traceWires( p[0], p[1] );
+            }
+        }
     }
 
-    // Perform sanity checks on all gates
-    private static void sanityChecks() {
-        for (Iterator <Gate> i = Gate.iterator(); i.hasNext();) {
-            i.next().sanityCheck();
+    /** Perform sanity checks on all gates.
+     *  @param ctx the context
+     */
+    static void sanityChecks( SimulationContext ctx ) {
+        for (Iterator <Gate> i = ctx.gates(); i.hasNext();) {
+            i.next().sanityCheck( ctx.errors );
+        }
+    }
+
+    /** Print out the entire logic circuit.
+     *  @param ctx the context
+     *  @param out where to print it
+     */
+    static void printLogic( SimulationContext ctx, PrintStream out ) {
+        for (Iterator <Gate> i = ctx.gates(); i.hasNext();) {
+            out.println( i.next() );
+        }
+        for (Iterator <Wire> i = ctx.wires(); i.hasNext();) {
+            out.println( i.next() );
+        }
+        for (Iterator <Subcircuit.Instance> i = ctx.instances();
+            i.hasNext();
+        ) {
+            out.println( i.next() );
+        }
+    }
+
+    /** What makes the event sets of the kind named on the command line.
+     *  @param errors where an unknown kind is reported
+     *  @param kind heap or calendar
+     *  @return the maker of event sets
+     */
+    static Supplier <EventSet> eventSets( Errors errors, String kind ) {
+        if ("calendar".equals( kind )) return CalendarQueue::new;
+        if (!"heap".equals( kind )) {
+            errors.warn( "Event set " + kind + ": kind unknown" );
         }
+        return HeapEventSet::new;
     }
 
-    // Print out the entire logic circuit
-    private static void printLogic() {
-        for (Iterator <Gate> i = Gate.iterator(); i.hasNext();) {
-            System.out.println( i.next() );
+    // Open the trace file, or return null to trace to System.out
+    private static OutputStream openTrace( String outName, Errors errors ) {
+        if (outName == null) return null;
+        try {
+            return new FileOutputStream( outName );
+        } catch( FileNotFoundException e ) {
+            errors.fatal( "Can't open the trace file" );
+            return null;
+        }
+    }
+
+    // Run a compiled circuit on the engine the options choose
+    private static void runEngine(
+        SimulationContext ctx, Netlist net, RunStats run, int threads,
+        Supplier <EventSet> newEventSet, String cacheName, String resumeName,
+        String checkpointName, float at, float every
+    ) {
+        if (threads > 1) {
+            new ParallelSimulation( ctx, threads, newEventSet ).run();
+            return;
+        }
+        final EventSet set = newEventSet.get();
+        ctx.simulation.setEventSet( set );
+        if (run != null) {
+            run.watch( set );
+            run.setClock( () -> ctx.simulation.time );
         }
-        for (Iterator <Wire> i = Wire.iterator(); i.hasNext();) {
-            System.out.println( i.next() );
+        if (cacheName != null) {
+            new IncrementalSimulation( net, cacheName ).run( ctx.simulation );
+        } else {
+            runSequential( net, ctx.simulation, resumeName, checkpointName,
+                at, every );
         }
     }
 
+    /** Make the trace sink named on the command line.
+     *  @param format text, binary, vcd, vcd.gz or none
+     *  @param out the stream to write the trace to
+     *  @param net the netlist being traced
+     *  @return the trace sink
+     */
+    static TraceSink makeTrace( String format, OutputStream out, Netlist net ) {
+        if ("none".equals( format )) return TraceSink.NULL;
+        if ("binary".equals( format )) return new BinaryTrace( out, net );
+        if ("vcd".equals( format )) return new VcdTrace( out, net, false );
+        if ("vcd.gz".equals( format )) return new VcdTrace( out, net, true );
+        return new TextTrace( out, net );
+    }
+
+    /** Test for a known trace format.
+     *  @param format the name of the format
+     *  @return true if it is text, binary, vcd, vcd.gz or none
+     */
+    static boolean isTraceFormat( String format ) {
+        return "text".equals( format ) || "binary".equals( format )
+            || "vcd".equals( format ) || "vcd.gz".equals( format )
+            || "none".equals( format );
+    }
+
     /** Main method.
+     *  <p>
+     *  Usage: java LogicSimulator [-check] [-queue heap|calendar]
+     *  [-format text|binary|vcd|vcd.gz|none] [-o tracefile] [-trace probes]
+     *  [-outputs] [-threads n] [-vectors vectorfile] [-checkpoint savefile
+     *  [-at t] [-every s]] [-resume savefile] [-incremental cachefile]
+     *  [-compile imagefile] [-xz] file
+     *  where -check builds and checks the circuit without simulating it,
+     *  -compile saves it once checked as a precompiled image, which can be
+     *  given in place of the file to start without parsing, and the trace goes
+     *  to System.out as text unless the options say otherwise.  The probes are
+     *  a list like a,b:c naming gate a and the wires from b to c, and -outputs
+     *  traces the values arriving at output gates; with either, nothing else is
+     *  traced.  With -threads, the circuit is split among n threads, giving the
+     *  same trace.  With -vectors, there is no trace; instead the steady state
+     *  outputs for each input vector in the vector file are found by cycles.
+     *  With -checkpoint, the state of the run is saved when the simulated time
+     *  reaches t, and every s seconds of wall clock time; -resume carries on
+     *  from a saved state, with the trace from then on, but not as a VCD
+     *  dump, which must start from time 0.  Both need the sequential
+     *  engine, as does -incremental, which simulates only the part of the
+     *  circuit edited since the run that left the cache file, taking the
+     *  rest of the trace from the cache.  With -xz, every
+     *  signal is 0, 1, x (unknown) or z (high impedance), all x until
+     *  driven, and input gates may start at x or z; this too needs the
+     *  sequential engine alone.
      *  @param args the command line arguments
      */
     public static void main( String[] args ) {
-        Errors.setPrefix( "Logicsim" );
-        if (args.length < 1) {
-            Errors.fatal( "Missing argument" );
+        try {
+            simulate( args );
+        } catch( Errors.FatalError e ) {
+            System.exit( 1 );
+        }
+    }
+
+    // Simulate the circuit named in the command line arguments
+    private static void simulate( String[] args ) {
+        final SimulationContext ctx = new SimulationContext( "Logicsim" );
+        final Errors errors = ctx.errors;
+        Supplier <EventSet> newEventSet = HeapEventSet::new;
+        String fileName = null;
+        boolean checkOnly = false;
+        String format = "text";
+        String outName = null;
+        String traceList = null;
+        boolean outputsOnly = false;
+        int threads = 1;
+        boolean stats = false;
+        boolean jmx = false;
+        String vectorName = null;
+        String checkpointName = null;
+        String resumeName = null;
+        String imageName = null;
+        String cacheName = null;
+        float at = Float.NaN;
+        float every = 0.0f;
+        for (int i = 0; i < args.length; i++) {
+            if ("-check".equals( args[i] )) {
+                checkOnly = true;
+            } else if ("-stats".equals( args[i] )) {
+                stats = true;
+            } else if ("-jmx".equals( args[i] )) {
+                jmx = true;
+            } else if ("-xz".equals( args[i] )) {
+                ctx.setFourValued();
+            } else if ("-queue".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                newEventSet = eventSets( errors, args[i] );
+            } else if ("-format".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                format = args[i];
+                if (!isTraceFormat( format )) {
+                    errors.warn( "Trace format " + format + ": unknown" );
+                }
+            } else if ("-o".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                outName = args[i];
+            } else if ("-trace".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                traceList = args[i];
+            } else if ("-outputs".equals( args[i] )) {
+                outputsOnly = true;
+            } else if ("-vectors".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                vectorName = args[i];
+            } else if ("-checkpoint".equals( args[i] )
+                && (i + 1 < args.length)
+            ) {
+                i = i + 1;
+                checkpointName = args[i];
+            } else if ("-compile".equals( args[i] )
+                && (i + 1 < args.length)
+            ) {
+                i = i + 1;
+                imageName = args[i];
+            } else if ("-incremental".equals( args[i] )
+                && (i + 1 < args.length)
+            ) {
+                i = i + 1;
+                cacheName = args[i];
+            } else if ("-resume".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                resumeName = args[i];
+            } else if ("-at".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                at = timeOption( errors, "Checkpoint time", args[i] );
+            } else if ("-every".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                every = timeOption( errors, "Checkpoint interval", args[i] );
+            } else if ("-threads".equals( args[i] ) && (i + 1 < args.length)) {
+                i = i + 1;
+                try {
+                    threads = Integer.parseInt( args[i] );
+                } catch( NumberFormatException e ) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    errors.warn( "Threads " + args[i] + ": must be positive" );
+                    threads = 1;
+                }
+            } else if (fileName == null) {
+                fileName = args[i];
+            } else {
+                errors.warn( "Extra arguments" );
+            }
+        }
+        if (fileName == null) {
+            errors.fatal( "Missing argument" );
         }
-        if (args.length > 1) {
-            Errors.warn( "Extra arguments" );
+        if ((checkpointName == null)
+            && (!Float.isNaN( at ) || (every > 0.0f))
+        ) {
+            errors.warn( "-at and -every need -checkpoint" );
+        }
+        if (((checkpointName != null) || (resumeName != null))
+            && ((threads > 1) || (vectorName != null))
+        ) {
+            errors.warn( "Checkpoints need the sequential engine" );
+        }
+        if ((resumeName != null) && format.startsWith( "vcd" )) {
+            // The dump would declare every signal 0 at the resumed time
+            errors.warn( "A resumed run can't write a VCD trace" );
+        }
+        if ((cacheName != null) && ((threads > 1) || (vectorName != null)
+            || (checkpointName != null) || (resumeName != null))
+        ) {
+            errors.warn( "Incremental runs need the sequential engine alone" );
+        }
+        if (ctx.isFourValued() && ((threads > 1) || (vectorName != null)
+            || (checkpointName != null) || (resumeName != null)
+            || (cacheName != null))
+        ) {
+            errors.warn(
+                "Four-valued logic needs the sequential engine alone"
+            );
         }
         try {
-            buildLogic( new Scanner( new FileInputStream( args[0] ) ) );
-            sanityChecks();
-            if (Errors.warnings() > 0) {
-                printLogic();
+            final long start = System.nanoTime();
+            final boolean image = NetlistImage.isImage( fileName );
+            if (image) {
+                NetlistImage.load( ctx, fileName );
+            } else {
+                try (ByteScanner sc = new ByteScanner( fileName, errors )) {
+                    buildLogic( ctx, sc );
+                }
+            }
+            if (traceList != null) addProbes( ctx, traceList );
+            final long read = System.nanoTime();
+            sanityChecks( ctx );
+            final long checked = System.nanoTime();
+            if (errors.warnings() > 0) {
+                printLogic( ctx, System.out );
                 System.exit( 1 );
+            } else if (imageName != null) {
+                ctx.compile();
+                NetlistImage.save( ctx, imageName );
+            } else if (!checkOnly) {
+                final Netlist net = image ? ctx.netlist() : ctx.compile();
+                final RunStats run = (stats || jmx) ? new RunStats() : null;
+                if (run != null) {
+                    run.phase( "read", read - start );
+                    run.phase( "check", checked - read );
+                    run.phase( "compile", System.nanoTime() - checked );
+                    net.setStats( run );
+                    if (jmx) run.register( fileName, errors );
+                }
+                try (OutputStream file = openTrace( outName, errors )) {
+                    final OutputStream out = (file == null) ? System.out : file;
+                    if (vectorName != null) {
+                        if (run != null) run.start();
+                        simulateCycles( net, vectorName, out );
+                    } else {
+                        final TraceSink trace = makeTrace( format, out, net );
+                        net.setTrace( trace );
+                        selectTrace( ctx, outputsOnly );
+                        if (run != null) run.start();
+                        try {
+                            runEngine( ctx, net, run, threads, newEventSet,
+                                cacheName, resumeName, checkpointName, at,
+                                every );
+                        } finally {
+                            // After a fatal error, the trace up to it is kept
+                            trace.close();
+                        }
+                    }
+                }
+                if (run != null) {
+                    run.stop();
+                    run.unregister();
+                    if (stats) run.report( System.err, net, 10 );
+                }
+            }
+        } catch( FileNotFoundException e ) {
+            errors.fatal( "Can't open the file" );
+        } catch( IOException e ) {
+            errors.fatal( "Can't read the file: " + e.getMessage() );
+        }
+    }
+
+    // Launch or resume a sequential simulation, and run it with or without
+    // checkpoints
+    private static void runSequential(
+        Netlist net, Simulation sim, String resumeName,
+        String checkpointName, float at, float every
+    ) {
+        if (resumeName != null) {
+            Checkpoint.restore( resumeName, net, sim );
+        } else {
+            net.launch( sim );
+        }
+        if (checkpointName != null) {
+            runWithCheckpoints( net, sim, checkpointName, at, every );
+        } else {
+            sim.run();
+        }
+    }
+
+    // A nonnegative number of time units or seconds given as an option
+    private static float timeOption(
+        Errors errors, String what, String value
+    ) {
+        try {
+            final float t = Float.parseFloat( value );
+            if (t >= 0.0f) return t;
+        } catch( NumberFormatException e ) {
+            // Reported below
+        }
+        errors.warn( what + " " + value + ": must be a nonnegative number" );
+        return Float.NaN;
+    }
+
+    // Run a simulation, saving its state when the simulated time reaches
+    // at, unless that is NaN, and every so many seconds, if that is positive
+    private static void runWithCheckpoints(
+        Netlist net, Simulation sim, String name, float at, float every
+    ) {
+        Timer timer = null;
+        if (every > 0.0f) {
+            final long period = Math.max( (long)(every * 1000), 1 );
+            timer = new Timer( true );
+            timer.scheduleAtFixedRate( new TimerTask() {
+                public void run() {
+                    sim.stop();
+                }
+            }, period, period );
+        }
+        boolean waiting = !Float.isNaN( at );
+        final long until = waiting ? net.ticks( at ) : 0;
+        for (;;) {
+            if (waiting) {
+                sim.run( until );
             } else {
-                Simulation.run();
+                sim.run();
             }
+            if (sim.isOver()) break;
+            final EventSet set = sim.eventSet();
+            if (set.time( set.first() ) >= until) waiting = false;
+            // The trace must be complete up to the saved state
+            net.traceSink().flush();
+            Checkpoint.save( name, net );
+        }
+        if (timer != null) timer.cancel();
+    }
+
+    // Find the steady state outputs for each vector in a vector file
+    private static void simulateCycles(
+        Netlist net, String vectorName, OutputStream out
+    ) {
+        final CycleSimulation cycles = new CycleSimulation( net );
+        final PrintStream p = new PrintStream(
+            new BufferedOutputStream( out, 1 << 16 ), false
+        );
+        try (ByteScanner sc = new ByteScanner( vectorName, net.errors() )) {
+            cycles.run( sc, p );
         } catch( FileNotFoundException e ) {
-            Errors.fatal( "Can't open the file" );
+            net.errors().fatal( "Can't open the vector file" );
+        } catch( IOException e ) {
+            net.errors().fatal( "Can't read the vector file: "
+                + e.getMessage() );
+        }
+        if (out == System.out) {
+            p.flush();
+        } else {
+            p.close();
         }
     }
 }
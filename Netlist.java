@@ -0,0 +1,1462 @@
+// Netlist.java
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/** The compiled form of a circuit, used by the simulation kernel.
+ *  <p>
+ *  Gates and Wires are the front end model built by the parser.  Once
+ *  they pass their sanity checks they are compiled into parallel arrays
+ *  indexed by gate id and wire id, with the wires out of each gate stored
+ *  contiguously, so the simulation walks flat arrays instead of objects.
+ *  <p>
+ *  Delays and times are counted in ticks, a fixed decimal fraction of the
+ *  time unit chosen when the netlist is compiled, the coarsest one in
+ *  which every delay is a whole number of ticks.  So the simulation adds
+ *  up delays exactly however long it runs.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Gate
+ *  @see Wire
+ *  @see Simulation
+ *  @see TraceSink
+ */
+public class Netlist implements Simulation.Dispatcher {
+
+    /** Gate kinds.
+     */
+    public static final byte INPUT = 0;
+    public static final byte OUTPUT = 1;
+    public static final byte XOR = 2;
+    public static final byte THRESHOLD = 3;
+
+    /** Values of four-valued logic, besides 0 and 1: unknown, and high
+     *  impedance, which the inputs of a gate read as unknown.
+     */
+    public static final int X = 2;
+    public static final int Z = 3;
+
+    /** The most decimal places a tick can have; finer delays are rounded.
+     */
+    public static final int MAX_PLACES = 9;
+
+    /** Kinds of typed events.
+     */
+    static final int GATE_OUTPUT = 1;
+    static final int INPUT_NEXT = 2;
+    static final int WIRE_OUTPUT = 3;
+
+    /** The number of gates and wires.
+     */
+    public final int gates;
+    public final int wires;
+
+    // Attributes of each gate, indexed by gate id
+    private final String[] name;
+    private final byte[] kind;
+    private final long[] delay;     // in ticks
+    private final int[] param;    // threshold, or initial value of inputs
+
+    // State of each gate, indexed by gate id
+    private final int[] inputCount;
+    private final int[] oldOutput;
+    private final int[] newOutput;
+    private final int[] changesLeft;
+
+    // Attributes of each wire, indexed by wire id
+    private final int[] wireSrc;
+    private final int[] wireDst;
+    private final long[] wireDelay;
+
+    // Under a netlist read from an image, the names are decoded only when
+    // asked for, the name of gate g being the UTF-8 bytes of nameBytes
+    // from nameStart[g] to nameStart[g+1]
+    private ByteBuffer nameBytes = null;
+    private int[] nameStart = null;
+
+    // The gate ids by name, built when one is first looked up
+    private HashMap <String, Integer> byName = null;
+
+    // The delays as scanned, until the time base is chosen
+    private float[] scannedDelay = null;
+    private float[] scannedWireDelay = null;
+
+    // While the body of an instance is compiled, its gates and wires are
+    // numbered from gateBase and wireBase, the names of its gates have
+    // prefix before them, and the gates bound to its ports, which the body
+    // numbers -1, -2 and so on, are ports[0], ports[1] and so on
+    private int gateBase = 0;
+    private int wireBase = 0;
+    private String prefix = null;
+    private int[] ports = null;
+
+    // The block of gate ids of each instance compiled, in the order the
+    // blocks start, so gate g keeps the name it has in its body, shared by
+    // every copy, and gets the prefix of its instance only when printed;
+    // null if there are no instances
+    private ArrayList <Block> blocks = null;
+
+    // The gates of an instance are start .. end-1, inside the block outer,
+    // or in none if that is -1, and their names have prefix before them
+    private static class Block {
+        final int start;
+        final int end;
+        final int outer;
+        final String prefix;
+
+        Block( int s, int e, int o, String p ) {
+            start = s;
+            end = e;
+            outer = o;
+            prefix = p;
+        }
+    }
+
+    // The block of the instance being compiled, -1 outside all of them
+    private int block = -1;
+
+    // A tick is 1 / unit of the time unit, unit being 10 to the places
+    private int places = 0;
+    private long unit = 1;
+
+    // The wires out of gate g are fanWire[fanStart[g] .. fanStart[g+1]-1]
+    private final int[] fanStart;
+    private final int[] fanWire;
+
+    // Cached labels of gates and wires that never change
+    private final String[] gateLabel;
+    private final String[] wireLabel;
+
+    // Where problems are reported
+    private final Errors errors;
+
+    // Where output changes are reported
+    private TraceSink trace = TraceSink.NULL;
+
+    // The simulation that runs this netlist sequentially, once launched
+    private Simulation sim = null;
+
+    // Where the run is counted, or null
+    private RunStats stats = null;
+
+    // Under the sequential engine, the changes of xor and threshold gates
+    // not yet made, each with the time and sequence number it would have
+    // had as an event.  Those of gate g are a list in time order from
+    // pendHead[g] to pendTail[g], pendLength[g] long, linked through
+    // pendNext; pendFree chains the unused entries
+    private int[] pendHead = null;
+    private int[] pendTail;
+    private int[] pendLength;
+    private long[] pendTime;
+    private long[] pendSeq;
+    private int[] pendNext;
+    private int pendFree = -1;
+    private int pendUsed = 0;
+
+    // The one pending change of gate g in the event set, its slot there and
+    // its list entry, or -1
+    private int[] outSlot;
+    private int[] outEntry;
+
+    // Under four-valued logic, the value of wire w in the two bits of
+    // wireValue[w / 32] from bit 2 * (w % 32) up, and the number of
+    // unknown inputs of each gate, its ones being counted in inputCount
+    private boolean fourValued = false;
+    private long[] wireValue = null;
+    private int[] unknownCount = null;
+
+    // Which gates are in the touched list of their process
+    private final boolean[] isTouched;
+
+    // Which gates and wires have their output changes reported
+    private final boolean[] tracedGate;
+    private final boolean[] tracedWire;
+
+    // Construct an empty netlist with room for g gates and w wires
+    private Netlist( int g, int w, Errors e ) {
+        errors = e;
+        gates = g;
+        wires = w;
+        name = new String[g];
+        kind = new byte[g];
+        delay = new long[g];
+        param = new int[g];
+        inputCount = new int[g];
+        oldOutput = new int[g];
+        newOutput = new int[g];
+        changesLeft = new int[g];
+        wireSrc = new int[w];
+        wireDst = new int[w];
+        wireDelay = new long[w];
+        fanStart = new int[g + 1];
+        fanWire = new int[w];
+        gateLabel = new String[g];
+        wireLabel = new String[w];
+        isTouched = new boolean[g];
+        tracedGate = new boolean[g];
+        tracedWire = new boolean[w];
+        Arrays.fill( tracedGate, true );
+        Arrays.fill( tracedWire, true );
+    }
+
+    /** Compile all the gates and wires of a context into a netlist.
+     *  <p>
+     *  Call this only after the gates have passed their sanity checks.
+     *  @param ctx the context
+     *  @return the new netlist
+     */
+    static Netlist compile( SimulationContext ctx ) {
+        final Netlist net
+            = new Netlist( ctx.gateCount(), ctx.wireCount(), ctx.errors );
+        net.scannedDelay = new float[net.gates];
+        net.scannedWireDelay = new float[net.wires];
+        net.compileScope( ctx );
+        net.chooseTimeBase();
+        net.link();
+        return net;
+    }
+
+    // Compile the gates, wires and instances of a circuit or a body
+    private void compileScope( SimulationContext ctx ) {
+        for (Iterator <Gate> i = ctx.gates(); i.hasNext();) {
+            i.next().compile( this );
+        }
+        for (Iterator <Wire> i = ctx.wires(); i.hasNext();) {
+            i.next().compile( this );
+        }
+        for (Iterator <Subcircuit.Instance> i = ctx.instances();
+            i.hasNext();
+        ) {
+            compileInstance( i.next() );
+        }
+    }
+
+    // Compile a copy of the body of a subcircuit for one instance
+    private void compileInstance( Subcircuit.Instance inst ) {
+        final int[] bound = new int[inst.bound.length];
+        for (int i = 0; i < bound.length; i++) {
+            bound[i] = gateId( inst.bound[i].id );
+        }
+        final int outerGateBase = gateBase;
+        final int outerWireBase = wireBase;
+        final String outerPrefix = prefix;
+        final int[] outerPorts = ports;
+        final int outerBlock = block;
+        gateBase = gateBase + inst.gateBase;
+        wireBase = wireBase + inst.wireBase;
+        prefix = ((prefix == null) ? "" : prefix) + inst.name + ".";
+        ports = bound;
+        if (blocks == null) blocks = new ArrayList <> ();
+        block = blocks.size();
+        blocks.add( new Block( gateBase,
+            gateBase + inst.definition.gateCount(), outerBlock, prefix ) );
+        compileScope( inst.definition.body );
+        gateBase = outerGateBase;
+        wireBase = outerWireBase;
+        prefix = outerPrefix;
+        ports = outerPorts;
+        block = outerBlock;
+    }
+
+    // The gate id of a gate of the circuit or body being compiled
+    private int gateId( int id ) {
+        return (id < 0) ? ports[-1 - id] : gateBase + id;
+    }
+
+    /** Record the attributes of one gate, used by Gate.compile().
+     *  @param id the gate id, in the circuit or body being compiled
+     *  @param n the name of the gate
+     *  @param k the kind of the gate
+     *  @param d the delay of the gate, NaN for output gates
+     *  @param p the threshold of a threshold gate, initial value of an input
+     *  @param c the change count of an input gate
+     */
+    void setGate( int id, String n, byte k, float d, int p, int c ) {
+        final int g = gateBase + id;
+        name[g] = n;
+        kind[g] = k;
+        scannedDelay[g] = d;
+        param[g] = p;
+        changesLeft[g] = c;
+    }
+
+    /** Record the attributes of one wire, used by Wire.compile().
+     *  @param id the wire id, in the circuit or body being compiled
+     *  @param src the id of the source gate, there
+     *  @param dst the id of the destination gate, there
+     *  @param d the delay of the wire
+     */
+    void setWire( int id, int src, int dst, float d ) {
+        final int w = wireBase + id;
+        wireSrc[w] = gateId( src );
+        wireDst[w] = gateId( dst );
+        scannedWireDelay[w] = d;
+    }
+
+    // Choose the coarsest tick that all the scanned delays are whole
+    // numbers of, and convert the delays to ticks
+    private void chooseTimeBase() {
+        // Circuits built of subcircuits repeat a few delays many times, so
+        // each distinct delay is converted once
+        final HashMap <Float, Long> distinct = new HashMap <> ();
+        for (float d: scannedDelay) distinct.put( d, 0L );
+        for (float d: scannedWireDelay) distinct.put( d, 0L );
+        int p = 0;
+        for (float d: distinct.keySet()) p = Math.max( p, placesOf( d ) );
+        if (p > MAX_PLACES) {
+            errors.warn( "Delays finer than " + MAX_PLACES
+                + " decimal places: rounded" );
+            p = MAX_PLACES;
+        }
+        places = p;
+        unit = 1;
+        for (int i = 0; i < p; i++) unit = unit * 10;
+        distinct.replaceAll( ( d, t ) -> ticks( d ) );
+        for (int g = 0; g < gates; g++) {
+            delay[g] = distinct.get( scannedDelay[g] );
+        }
+        for (int w = 0; w < wires; w++) {
+            wireDelay[w] = distinct.get( scannedWireDelay[w] );
+        }
+        scannedDelay = null;
+        scannedWireDelay = null;
+    }
+
+    // The decimal places needed to write delay d exactly, as it was scanned
+    private static int placesOf( float d ) {
+        if (Float.isNaN( d ) || Float.isInfinite( d )) return 0;
+        final BigDecimal b = new BigDecimal( Float.toString( d ) );
+        return Math.max( b.stripTrailingZeros().scale(), 0 );
+    }
+
+    /** A delay or time in ticks, rounded to the nearest, but at least 1 if
+     *  positive.
+     *  @param d the delay in time units
+     *  @return the ticks
+     */
+    long ticks( float d ) {
+        if (Float.isNaN( d )) return 0;  // output gates have no delay
+        try {
+            final long t = new BigDecimal( Float.toString( d ) )
+                .movePointRight( places ).setScale( 0, RoundingMode.HALF_UP )
+                .longValueExact();
+            return ((t == 0) && (d > 0.0f)) ? 1 : t;
+        } catch (ArithmeticException | NumberFormatException e) {
+            // Infinity is not a decimal, and is too large as well
+            errors.fatal( "Delay " + d + ": too large for a time base of "
+                + timeString( 1 ) );
+            return 0;
+        }
+    }
+
+    /** A time as a decimal number of time units, as printed in the trace.
+     *  <p>
+     *  This is exact, and has at least one digit after the point, so
+     *  whole numbers look like "1.0".
+     *  @param t the time in ticks
+     *  @return the text
+     */
+    public String timeString( long t ) {
+        final long whole = t / unit;
+        long fraction = t % unit;
+        if (fraction == 0) return whole + ".0";
+        int digits = places;
+        while (fraction % 10 == 0) {
+            fraction = fraction / 10;
+            digits = digits - 1;
+        }
+        final String f = Long.toString( fraction );
+        final StringBuilder b = new StringBuilder();
+        b.append( whole ).append( '.' );
+        for (int i = f.length(); i < digits; i++) b.append( '0' );
+        return b.append( f ).toString();
+    }
+
+    /** A time as a number of time units.
+     *  @param t the time in ticks
+     *  @return the time in time units
+     */
+    public double units( long t ) {
+        return (double)t / unit;
+    }
+
+    /** The number of ticks in one time unit.
+     *  @return a power of ten
+     */
+    public long ticksPerUnit() {
+        return unit;
+    }
+
+    // Build the fan-out arrays, keeping each gate's wires in id order
+    private void link() {
+        for (int w = 0; w < wires; w++) {
+            fanStart[wireSrc[w] + 1] = fanStart[wireSrc[w] + 1] + 1;
+        }
+        for (int g = 0; g < gates; g++) {
+            fanStart[g + 1] = fanStart[g + 1] + fanStart[g];
+        }
+        final int[] fill = new int[gates];
+        for (int w = 0; w < wires; w++) {
+            final int g = wireSrc[w];
+            fanWire[fanStart[g] + fill[g]] = w;
+            fill[g] = fill[g] + 1;
+        }
+    }
+
+    /** The current description of a gate, as printed in the trace.
+     *  @param g the gate id
+     *  @return the description
+     */
+    public String gateLabel( int g ) {
+        if (kind[g] == INPUT) return inputLabel( g, changesLeft[g] );
+        if (gateLabel[g] == null) {
+            if (kind[g] == XOR) {
+                gateLabel[g] = "Gate " + name( g ) + " xor "
+                    + timeString( delay[g] );
+            } else if (kind[g] == THRESHOLD) {
+                gateLabel[g] = "Gate " + name( g ) + " threshold "
+                    + param[g] + " " + timeString( delay[g] );
+            } else {
+                gateLabel[g] = "Gate " + name( g ) + " output";
+            }
+        }
+        return gateLabel[g];
+    }
+
+    /** The description of an input gate, as printed in the trace.
+     *  <p>
+     *  The change count of an input gate counts down as it runs.
+     *  @param g the gate id
+     *  @param left the number of changes left
+     *  @return the description
+     */
+    public String inputLabel( int g, int left ) {
+        return "Gate " + name( g ) + " input "
+            + valueName( param[g] ) + " " + timeString( delay[g] ) + " "
+            + left;
+    }
+
+    /** The description of a wire, as printed in the trace.
+     *  @param w the wire id
+     *  @return the description
+     */
+    public String wireLabel( int w ) {
+        if (wireLabel[w] == null) {
+            wireLabel[w] = "Wire " + name( wireSrc[w] ) + ' '
+                + timeString( wireDelay[w] ) + ' ' + name( wireDst[w] );
+        }
+        return wireLabel[w];
+    }
+
+    /** The kind of a gate.
+     *  @param g the gate id
+     *  @return INPUT, OUTPUT, XOR or THRESHOLD
+     */
+    public byte kind( int g ) {
+        return kind[g];
+    }
+
+    /** The name of a gate.
+     *  @param g the gate id
+     *  @return the name
+     */
+    public String name( int g ) {
+        if (name[g] == null) {
+            final byte[] b = new byte[nameStart[g + 1] - nameStart[g]];
+            nameBytes.get( nameStart[g], b );
+            name[g] = new String( b, StandardCharsets.UTF_8 );
+        }
+        if (blocks == null) return name[g];
+        return prefixOf( g ) + name[g];
+    }
+
+    // The prefix of the name of gate g, that of the innermost instance it
+    // is in, or "" if none
+    private String prefixOf( int g ) {
+        // Find the last block starting at or before g; blocks nest, so
+        // either it holds g or the innermost one holding g is outside it
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (blocks.get( mid ).start <= g) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int b = low - 1; b >= 0; b = blocks.get( b ).outer) {
+            if (g < blocks.get( b ).end) return blocks.get( b ).prefix;
+        }
+        return "";
+    }
+
+    /** Look up a gate by name.
+     *  @param n the name of the gate
+     *  @return the gate id, or -1 if no gate has that name
+     */
+    public int find( String n ) {
+        if (byName == null) {
+            final HashMap <String, Integer> m = new HashMap <> ();
+            for (int g = 0; g < gates; g++) m.put( name( g ), g );
+            byName = m;
+        }
+        final Integer g = byName.get( n );
+        return (g == null) ? -1 : g;
+    }
+
+    /** The delay of a gate.
+     *  @param g the gate id
+     *  @return the delay, in ticks
+     */
+    long delay( int g ) {
+        return delay[g];
+    }
+
+    /** The threshold of a threshold gate, or the initial value of an input
+     *  gate.
+     *  @param g the gate id
+     *  @return the value
+     */
+    public int param( int g ) {
+        return param[g];
+    }
+
+    /** Switch to four-valued logic, in which every gate output and wire
+     *  is x until it is driven.  Call this before the run is launched.
+     */
+    public void setFourValued() {
+        fourValued = true;
+        wireValue = new long[(wires + 31) >>> 5];
+        Arrays.fill( wireValue, 0xAAAAAAAAAAAAAAAAL );
+        unknownCount = new int[gates];
+        for (int w = 0; w < wires; w++) {
+            unknownCount[wireDst[w]] = unknownCount[wireDst[w]] + 1;
+        }
+        Arrays.fill( oldOutput, X );
+        Arrays.fill( newOutput, X );
+    }
+
+    /** Test for four-valued logic.
+     *  @return true if values may be x and z as well as 0 and 1
+     */
+    public boolean isFourValued() {
+        return fourValued;
+    }
+
+    /** The name of a value, as it is written in circuits and traces.
+     *  @param value 0, 1, X or Z
+     *  @return 0, 1, x or z
+     */
+    public static char valueName( int value ) {
+        return "01xz".charAt( value );
+    }
+
+    /** The number of changes an input gate has left to make.
+     *  @param g the gate id
+     *  @return the count
+     */
+    public int changesLeft( int g ) {
+        return changesLeft[g];
+    }
+
+    /** Set the number of changes an input gate has left to make.
+     *  @param g the gate id
+     *  @param left the count
+     */
+    void setChangesLeft( int g, int left ) {
+        changesLeft[g] = left;
+    }
+
+    /** Write the time base, the attributes of all the gates and wires, and
+     *  whether the logic is four-valued.
+     *  <p>
+     *  Only attributes are written, not the state of a simulation.
+     *  @param out the stream to write to
+     *  @throws IOException if the write fails
+     */
+    public void write( DataOutputStream out ) throws IOException {
+        out.writeInt( gates );
+        out.writeInt( wires );
+        out.writeByte( places );
+        for (int g = 0; g < gates; g++) {
+            out.writeUTF( name( g ) );
+            out.writeByte( kind[g] );
+            out.writeLong( delay[g] );
+            out.writeInt( param[g] );
+            out.writeInt( changesLeft[g] );
+        }
+        for (int w = 0; w < wires; w++) {
+            out.writeInt( wireSrc[w] );
+            out.writeInt( wireDst[w] );
+            out.writeLong( wireDelay[w] );
+        }
+        out.writeBoolean( fourValued );
+    }
+
+    /** Read a netlist written by write().
+     *  @param in the stream to read from
+     *  @param e where problems with the netlist are reported
+     *  @return the netlist
+     *  @throws IOException if the read fails
+     */
+    public static Netlist read(
+        DataInputStream in, Errors e
+    ) throws IOException {
+        final Netlist net = new Netlist( in.readInt(), in.readInt(), e );
+        net.places = in.readByte();
+        for (int i = 0; i < net.places; i++) net.unit = net.unit * 10;
+        for (int g = 0; g < net.gates; g++) {
+            net.name[g] = in.readUTF();
+            net.kind[g] = in.readByte();
+            net.delay[g] = in.readLong();
+            net.param[g] = in.readInt();
+            net.changesLeft[g] = in.readInt();
+        }
+        for (int w = 0; w < net.wires; w++) {
+            net.wireSrc[w] = in.readInt();
+            net.wireDst[w] = in.readInt();
+            net.wireDelay[w] = in.readLong();
+        }
+        net.link();
+        if (in.readBoolean()) net.setFourValued();
+        return net;
+    }
+
+    /** Write the netlist as the body of a precompiled image.
+     *  <p>
+     *  Unlike write(), the image holds each attribute as one array, the
+     *  fan-out arrays included, longs first and bytes last, so that
+     *  readImage() copies it in bulk and has nothing to rebuild.
+     *  @param out the stream to write to
+     *  @throws IOException if the write fails
+     */
+    void writeImage( DataOutputStream out ) throws IOException {
+        final byte[][] names = new byte[gates][];
+        int length = 0;
+        for (int g = 0; g < gates; g++) {
+            names[g] = name( g ).getBytes( StandardCharsets.UTF_8 );
+            length = length + names[g].length;
+        }
+        out.writeInt( gates );
+        out.writeInt( wires );
+        out.writeInt( places );
+        out.writeInt( length );
+        for (int g = 0; g < gates; g++) out.writeLong( delay[g] );
+        for (int w = 0; w < wires; w++) out.writeLong( wireDelay[w] );
+        for (int g = 0; g < gates; g++) out.writeInt( param[g] );
+        for (int g = 0; g < gates; g++) out.writeInt( changesLeft[g] );
+        for (int g = 0; g <= gates; g++) out.writeInt( fanStart[g] );
+        for (int w = 0; w < wires; w++) out.writeInt( fanWire[w] );
+        for (int w = 0; w < wires; w++) out.writeInt( wireSrc[w] );
+        for (int w = 0; w < wires; w++) out.writeInt( wireDst[w] );
+        int start = 0;
+        for (int g = 0; g < gates; g++) {
+            out.writeInt( start );
+            start = start + names[g].length;
+        }
+        out.writeInt( start );
+        out.write( kind );
+        for (int g = 0; g < gates; g++) out.write( names[g] );
+    }
+
+    /** Read the body of a precompiled image written by writeImage().
+     *  <p>
+     *  The arrays are checked for ids out of range, so a damaged image
+     *  cannot fail later in the middle of a run.  The names stay in the
+     *  buffer until they are asked for.
+     *  @param b the buffer to read from, usually a mapped file
+     *  @param e where problems with the netlist are reported
+     *  @return the netlist
+     *  @throws java.nio.BufferUnderflowException if the image is short
+     */
+    static Netlist readImage( ByteBuffer b, Errors e ) {
+        final int g = b.getInt();
+        final int w = b.getInt();
+        final int p = b.getInt();
+        final int length = b.getInt();
+        if ((g < 0) || (w < 0) || (p < 0) || (p > MAX_PLACES) || (length < 0)
+            || ((long)g * 25 + (long)w * 20 + 8 + length > b.remaining())
+        ) {
+            e.fatal( "Netlist image damaged" );
+        }
+        final Netlist net = new Netlist( g, w, e );
+        net.places = p;
+        for (int i = 0; i < p; i++) net.unit = net.unit * 10;
+        b.asLongBuffer().get( net.delay );
+        skip( b, 8 * g );
+        b.asLongBuffer().get( net.wireDelay );
+        skip( b, 8 * w );
+        get( b, net.param );
+        get( b, net.changesLeft );
+        get( b, net.fanStart );
+        get( b, net.fanWire );
+        get( b, net.wireSrc );
+        get( b, net.wireDst );
+        net.nameStart = new int[g + 1];
+        get( b, net.nameStart );
+        b.get( net.kind );
+        net.nameBytes = b.slice( b.position(), length );
+        skip( b, length );
+        if (!net.imageIntact( length )) e.fatal( "Netlist image damaged" );
+        return net;
+    }
+
+    // Copy ints out of a buffer, moving past them
+    private static void get( ByteBuffer b, int[] a ) {
+        b.asIntBuffer().get( a );
+        skip( b, 4 * a.length );
+    }
+
+    // Move past bytes of a buffer
+    private static void skip( ByteBuffer b, int n ) {
+        b.position( b.position() + n );
+    }
+
+    // Check that every id and offset read from an image is in range
+    private boolean imageIntact( int length ) {
+        if ((fanStart[0] != 0) || (fanStart[gates] != wires)) return false;
+        if ((nameStart[0] != 0) || (nameStart[gates] != length)) return false;
+        for (int g = 0; g < gates; g++) {
+            if ((kind[g] < INPUT) || (kind[g] > THRESHOLD)) return false;
+            if (fanStart[g] > fanStart[g + 1]) return false;
+            if (nameStart[g] > nameStart[g + 1]) return false;
+        }
+        for (int w = 0; w < wires; w++) {
+            if ((wireSrc[w] < 0) || (wireSrc[w] >= gates)) return false;
+            if ((wireDst[w] < 0) || (wireDst[w] >= gates)) return false;
+            if ((fanWire[w] < 0) || (fanWire[w] >= wires)) return false;
+        }
+        return true;
+    }
+
+    /** Set where output changes are reported, the default is nowhere.
+     *  @param t the trace sink
+     */
+    public void setTrace( TraceSink t ) {
+        trace = t;
+    }
+
+    /** Count what happens during the run.
+     *  <p>
+     *  The sequential engine counts in s itself; a parallel engine gives
+     *  each of its threads a part of s.
+     *  @param s the statistics
+     */
+    public void setStats( RunStats s ) {
+        s.setNetlist( this );
+        stats = s;
+        sequential.stats = s;
+    }
+
+    /** Where the run is counted.
+     *  @return the statistics, or null if the run is not counted
+     */
+    public RunStats stats() {
+        return stats;
+    }
+
+    /** Stop tracing everything, so that only what is selected is traced.
+     *  <p>
+     *  Initially every gate and wire is traced.
+     */
+    public void traceNone() {
+        Arrays.fill( tracedGate, false );
+        Arrays.fill( tracedWire, false );
+    }
+
+    /** Trace every gate and wire, as at first.
+     */
+    void traceAll() {
+        Arrays.fill( tracedGate, true );
+        Arrays.fill( tracedWire, true );
+    }
+
+    /** Trace the output of a gate.
+     *  @param g the gate id
+     */
+    public void traceGate( int g ) {
+        tracedGate[g] = true;
+    }
+
+    /** Trace every wire from one gate to another.
+     *  @param src the id of the source gate
+     *  @param dst the id of the destination gate
+     */
+    public void traceWires( int src, int dst ) {
+        for (int i = fanStart[src]; i < fanStart[src + 1]; i++) {
+            if (wireDst[fanWire[i]] == dst) tracedWire[fanWire[i]] = true;
+        }
+    }
+
+    /** Trace the values arriving at every output gate.
+     *  <p>
+     *  Output gates have no output of their own, so this traces the wires
+     *  into them.
+     */
+    public void traceOutputs() {
+        for (int w = 0; w < wires; w++) {
+            if (kind[wireDst[w]] == OUTPUT) tracedWire[w] = true;
+        }
+    }
+
+    /** Test whether the output changes of a gate are traced.
+     *  @param g the gate id
+     *  @return true if they are
+     */
+    public boolean gateTraced( int g ) {
+        return tracedGate[g];
+    }
+
+    /** Test whether the output changes of a wire are traced.
+     *  @param w the wire id
+     *  @return true if they are
+     */
+    public boolean wireTraced( int w ) {
+        return tracedWire[w];
+    }
+
+    /** Where problems are reported.
+     *  @return the error reporter
+     */
+    Errors errors() {
+        return errors;
+    }
+
+    /** Where output changes are reported.
+     *  @return the trace sink
+     */
+    TraceSink traceSink() {
+        return trace;
+    }
+
+    /** The source of a wire.
+     *  @param w the wire id
+     *  @return the id of the source gate
+     */
+    int wireSource( int w ) {
+        return wireSrc[w];
+    }
+
+    /** The destination of a wire.
+     *  @param w the wire id
+     *  @return the id of the destination gate
+     */
+    int wireDestination( int w ) {
+        return wireDst[w];
+    }
+
+    /** The delay of a wire.
+     *  @param w the wire id
+     *  @return the delay in ticks
+     */
+    long wireDelay( int w ) {
+        return wireDelay[w];
+    }
+
+    /** The number of wires out of a gate.
+     *  @param g the gate id
+     *  @return the count
+     */
+    int fanOut( int g ) {
+        return fanStart[g + 1] - fanStart[g];
+    }
+
+    /** One of the wires out of a gate, in id order.
+     *  @param g the gate id
+     *  @param i which wire, counting from 0 up to fanOut( g ) - 1
+     *  @return the wire id
+     */
+    int fanWire( int g, int i ) {
+        return fanWire[fanStart[g] + i];
+    }
+
+    /** The gate whose state a typed event reads and changes.
+     *  @param k the kind of event
+     *  @param target the target of the event
+     *  @return the gate id
+     */
+    int gateOf( int k, int target ) {
+        if (k == WIRE_OUTPUT) return wireDst[target];
+        return target;
+    }
+
+    // Simulation methods
+
+    /** The engine that the simulation methods run under.
+     *  <p>
+     *  The sequential engine is the Simulation framework; a parallel engine
+     *  gives each partition of the netlist a process of its own.
+     */
+    abstract static class Process {
+
+        /** Where this process counts what it does, null if it doesn't.
+         */
+        RunStats stats = null;
+
+        /** The xor and threshold gates whose inputs have changed at the
+         *  current time, in the order of their first change; settle()
+         *  evaluates them once the time is over.
+         */
+        int[] touched = new int[64];
+        int touchedCount = 0;
+
+        /** Called by settle() before it evaluates a touched gate, so that
+         *  what the evaluation schedules can be told apart.
+         *  @param i the index of the gate in touched
+         */
+        void evaluating( int i ) {
+            // By default, there is nothing to do
+        }
+
+        /** Schedule a typed event.
+         *  @param delay the time interval before the event, in ticks
+         *  @param k the kind of event
+         *  @param target the gate or wire id
+         *  @param value the new value
+         */
+        abstract void schedule( long delay, int k, int target, int value );
+
+        /** Report a change in the output of a traced gate.
+         *  @param g the gate id
+         *  @param value the new value
+         */
+        abstract void gateChange( int g, int value );
+
+        /** Report a change in the output of a traced wire.
+         *  @param w the wire id
+         *  @param value the new value
+         */
+        abstract void wireChange( int w, int value );
+    }
+
+    // The process used under the Simulation framework
+    private final Process sequential = new Process() {
+        void schedule( long delay, int k, int target, int value ) {
+            sim.schedule( delay, k, target, value );
+        }
+
+        void gateChange( int g, int value ) {
+            trace.gateChange( sim.time, g, value );
+        }
+
+        void wireChange( int w, int value ) {
+            trace.wireChange( sim.time, w, value );
+        }
+    };
+
+    /** Launch the simulation by starting all the input gates.
+     *  <p>
+     *  This makes the netlist the dispatcher of the simulation, so what is
+     *  left is to run the simulation.
+     *  @param s the simulation to run the netlist under
+     */
+    public void launch( Simulation s ) {
+        attach( s );
+        launch( sequential );
+    }
+
+    // Make this the dispatcher of simulation s, ready to run sequentially
+    private void attach( Simulation s ) {
+        sim = s;
+        if (pendHead == null) {
+            pendHead = new int[gates];
+            pendTail = new int[gates];
+            pendLength = new int[gates];
+            outSlot = new int[gates];
+            outEntry = new int[gates];
+            Arrays.fill( pendHead, -1 );
+            Arrays.fill( pendTail, -1 );
+            Arrays.fill( outSlot, -1 );
+            Arrays.fill( outEntry, -1 );
+            pendTime = new long[64];
+            pendSeq = new long[64];
+            pendNext = new int[64];
+        }
+        s.setDispatcher( this );
+        s.setTickEnd( () -> settle( sequential ) );
+    }
+
+    /** Write the state of the run under the sequential engine.
+     *  <p>
+     *  Call this between batches of events, when no gate is waiting to be
+     *  evaluated.  Only typed events are written; the gate output changes
+     *  in the event set are written as part of the pending changes, from
+     *  which they are made again.
+     *  @param out the stream to write to
+     *  @throws IOException if the write fails
+     */
+    void writeState( DataOutputStream out ) throws IOException {
+        final EventSet set = sim.eventSet();
+        out.writeLong( sim.time );
+        out.writeLong( set.sequence() );
+        for (int g = 0; g < gates; g++) {
+            out.writeInt( inputCount[g] );
+            out.writeByte( oldOutput[g] );
+            out.writeByte( newOutput[g] );
+            out.writeInt( changesLeft[g] );
+            out.writeInt( pendLength[g] );
+            int effective = -1;
+            int i = 0;
+            for (int e = pendHead[g]; e >= 0; e = pendNext[e]) {
+                out.writeLong( pendTime[e] );
+                out.writeLong( pendSeq[e] );
+                if (e == outEntry[g]) effective = i;
+                i = i + 1;
+            }
+            out.writeInt( effective );
+        }
+        final int[] slots = set.slots();
+        int n = 0;
+        for (int s: slots) {
+            if (set.action( s ) != null) {
+                errors.fatal( "Pending actions can't be saved" );
+            }
+            if (set.kind( s ) != GATE_OUTPUT) n = n + 1;
+        }
+        out.writeInt( n );
+        for (int s: slots) {
+            if (set.kind( s ) == GATE_OUTPUT) continue;
+            out.writeLong( set.time( s ) );
+            out.writeLong( set.seq( s ) );
+            out.writeByte( set.kind( s ) );
+            out.writeInt( set.target( s ) );
+            out.writeByte( set.value( s ) );
+        }
+    }
+
+    /** Restore a state written by writeState(), instead of launching.
+     *  <p>
+     *  The netlist must be fresh, and the simulation must have an empty
+     *  event set; what is left is to run the simulation.
+     *  @param in the stream to read from
+     *  @param s the simulation to run the netlist under
+     *  @throws IOException if the read fails
+     */
+    void readState( DataInputStream in, Simulation s ) throws IOException {
+        attach( s );
+        s.time = in.readLong();
+        s.eventSet().setSequence( in.readLong() );
+        for (int g = 0; g < gates; g++) {
+            inputCount[g] = in.readInt();
+            oldOutput[g] = in.readByte();
+            newOutput[g] = in.readByte();
+            changesLeft[g] = in.readInt();
+            final int length = in.readInt();
+            for (int i = 0; i < length; i++) {
+                final int e = newEntry();
+                pendTime[e] = in.readLong();
+                pendSeq[e] = in.readLong();
+                pendNext[e] = -1;
+                if (pendTail[g] < 0) {
+                    pendHead[g] = e;
+                } else {
+                    pendNext[pendTail[g]] = e;
+                }
+                pendTail[g] = e;
+            }
+            pendLength[g] = length;
+            final int effective = in.readInt();
+            if (effective >= 0) {
+                int e = pendHead[g];
+                for (int i = 0; i < effective; i++) e = pendNext[e];
+                outEntry[g] = e;
+                outSlot[g] = s.scheduleAt(
+                    pendTime[e], pendSeq[e], GATE_OUTPUT, g, oldOutput[g]
+                );
+            }
+        }
+        final int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            s.scheduleAt( in.readLong(), in.readLong(), in.readByte(),
+                in.readInt(), in.readByte() );
+        }
+    }
+
+    /** A checksum of the attributes of the gates and wires, to tell whether
+     *  two netlists are of the same circuit.
+     *  @return the checksum
+     */
+    long fingerprint() {
+        final CRC32 crc = new CRC32();
+        final DataOutputStream out = new DataOutputStream(
+            new CheckedOutputStream( OutputStream.nullOutputStream(), crc )
+        );
+        try {
+            out.writeInt( gates );
+            out.writeInt( wires );
+            out.writeByte( places );
+            for (int g = 0; g < gates; g++) {
+                out.writeUTF( name( g ) );
+                out.writeByte( kind[g] );
+                out.writeLong( delay[g] );
+                out.writeInt( param[g] );
+            }
+            for (int w = 0; w < wires; w++) {
+                out.writeInt( wireSrc[w] );
+                out.writeInt( wireDst[w] );
+                out.writeLong( wireDelay[w] );
+            }
+        } catch (IOException e) {
+            // Not possible, nothing is really written
+        }
+        return crc.getValue();
+    }
+
+    /** Launch the simulation under some process, at time 0.
+     *  @param p the process
+     */
+    void launch( Process p ) {
+        for (int g = 0; g < gates; g++) {
+            if (kind[g] == INPUT) launchInput( p, g );
+        }
+        if (fourValued) {
+            // Gates whose output doesn't depend on their inputs are 0 or 1
+            // from the start, whatever arrives
+            for (int g = 0; g < gates; g++) {
+                if ((kind[g] == XOR) || (kind[g] == THRESHOLD)) touch( p, g );
+            }
+            settle( p );
+        }
+    }
+
+    /** Launch the simulation of a cone of the netlist, closed under
+     *  fan-out, by starting the input gates in it.
+     *  <p>
+     *  The rest of the netlist is not simulated; the wire outputs it
+     *  would feed into the cone must be scheduled separately.
+     *  @param s the simulation to run the netlist under
+     *  @param cone which gates are in the cone
+     */
+    void launchCone( Simulation s, boolean[] cone ) {
+        attach( s );
+        for (int g = 0; g < gates; g++) {
+            if (cone[g] && (kind[g] == INPUT)) launchInput( sequential, g );
+        }
+    }
+
+    // Start one input gate, with its initial value and first change; an
+    // input that starts at x or z is 1 after its first change
+    private void launchInput( Process p, int g ) {
+        final int initial = param[g];
+        if (fourValued ? (initial != X) : (initial == 1)) {
+            gateOutput( p, g, initial );
+        }
+        if (changesLeft[g] > 0) {
+            p.schedule( delay[g], INPUT_NEXT, g, (initial == 1) ? 0 : 1 );
+            if (p.stats != null) p.stats.scheduled( 1 );
+        }
+    }
+
+    /** Dispatch one typed event.
+     *  @param k the kind of event
+     *  @param target the gate or wire id
+     *  @param value the new value
+     */
+    public void dispatch( int k, int target, int value ) {
+        dispatch( sequential, k, target, value );
+    }
+
+    /** Dispatch one typed event under some process.
+     *  @param p the process
+     *  @param k the kind of event
+     *  @param target the gate or wire id
+     *  @param value the new value
+     */
+    void dispatch( Process p, int k, int target, int value ) {
+        if (p.stats != null) p.stats.executed( k );
+        switch (k) {
+        case WIRE_OUTPUT:
+            wireOutput( p, target, value );
+            break;
+        case GATE_OUTPUT:
+            if ((p == sequential) && !fourValued) {
+                pendingOutput( p, target, value );
+            } else {
+                countGateOutput( p, target, value );
+            }
+            break;
+        case INPUT_NEXT:
+            inputNext( p, target, value );
+            break;
+        default:
+            errors.fatal( "Event kind " + k + ": unknown" );
+        }
+    }
+
+    // The output of wire w changes to value
+    private void wireOutput( Process p, int w, int value ) {
+        if (tracedWire[w]) p.wireChange( w, value );
+        if (fourValued) {
+            wireInput( p, w, value );
+        } else {
+            gateInput( p, wireDst[w], value );
+        }
+    }
+
+    // One of the inputs of gate g changes to value; xor and threshold gates
+    // are only evaluated once every change at this time has arrived
+    private void gateInput( Process p, int g, int value ) {
+        final byte k = kind[g];
+        if ((k == XOR) || (k == THRESHOLD)) {
+            if (value == 1) {
+                inputCount[g] = inputCount[g] + 1;
+            } else {
+                inputCount[g] = inputCount[g] - 1;
+            }
+            touch( p, g );
+        } else if (k == INPUT) {
+            errors.warn( gateLabel( g ) + ": impossible input change" );
+        }
+        // Output gates are the end of the circuit, nothing to be done
+    }
+
+    // Under four-valued logic, the value of wire w changes; its old value
+    // is taken out of the counts of its destination, and the new one put in
+    private void wireInput( Process p, int w, int value ) {
+        final int i = w >>> 5;
+        final int shift = (w & 31) << 1;
+        final int old = (int)(wireValue[i] >>> shift) & 3;
+        wireValue[i] = (wireValue[i] & ~(3L << shift))
+            | ((long)value << shift);
+        final int g = wireDst[w];
+        final byte k = kind[g];
+        if ((k == XOR) || (k == THRESHOLD)) {
+            if (old == 1) {
+                inputCount[g] = inputCount[g] - 1;
+            } else if (old != 0) {
+                unknownCount[g] = unknownCount[g] - 1;
+            }
+            if (value == 1) {
+                inputCount[g] = inputCount[g] + 1;
+            } else if (value != 0) {
+                unknownCount[g] = unknownCount[g] + 1;
+            }
+            touch( p, g );
+        } else if (k == INPUT) {
+            errors.warn( gateLabel( g ) + ": impossible input change" );
+        }
+    }
+
+    // Add gate g to the gates to be evaluated at the end of this time
+    private void touch( Process p, int g ) {
+        if (!isTouched[g]) {
+            isTouched[g] = true;
+            if (p.touchedCount == p.touched.length) {
+                p.touched = Arrays.copyOf( p.touched, p.touchedCount * 2 );
+            }
+            p.touched[p.touchedCount] = g;
+            p.touchedCount = p.touchedCount + 1;
+        }
+    }
+
+    /** Evaluate the gates whose inputs changed at the current time.
+     *  <p>
+     *  The engine calls this once all the events at one time have been
+     *  dispatched, so a gate whose inputs change several times at once is
+     *  evaluated once, and a pulse of no width never reaches its output.
+     *  The gates are evaluated in the order of their first input change.
+     *  @param p the process
+     */
+    void settle( Process p ) {
+        final boolean pending = (p == sequential) && !fourValued;
+        for (int i = 0; i < p.touchedCount; i++) {
+            final int g = p.touched[i];
+            isTouched[g] = false;
+            // The following code suppresses changes from 1 to 1 or 0 to 0
+            final int myOutput = fourValued
+                ? unknownRule( g, inputCount[g], unknownCount[g] )
+                : logicRule( g, inputCount[g] );
+            if (myOutput != oldOutput[g]) {
+                oldOutput[g] = myOutput;
+                p.evaluating( i );
+                if (pending) {
+                    pendingChange( p, g );
+                } else {
+                    p.schedule( delay[g], GATE_OUTPUT, g, myOutput );
+                    if (p.stats != null) p.stats.scheduled( 1 );
+                }
+            } else if (p.stats != null) {
+                p.stats.unchanged();
+            }
+        }
+        p.touchedCount = 0;
+    }
+
+    // Compute the logical value of gate g given the number of one inputs
+    private int logicRule( int g, int count ) {
+        if (kind[g] == XOR) return count & 1;
+        if (count >= param[g]) return 1;
+        return 0;
+    }
+
+    // Compute the four-valued value of gate g given the number of one
+    // inputs and of unknown ones: x unless the unknowns can't matter
+    private int unknownRule( int g, int count, int unknown ) {
+        if (kind[g] == XOR) return (unknown > 0) ? X : (count & 1);
+        if (count >= param[g]) return 1;
+        if (count + unknown < param[g]) return 0;
+        return X;
+    }
+
+    // A scheduled output change of xor or threshold gate g happens
+    private void countGateOutput( Process p, int g, int value ) {
+        // First, suppress short pulses, changes away from the value
+        if (value != oldOutput[g]) {
+            if (p.stats != null) p.stats.filtered();
+            return;
+        }
+        // Second, suppress changes from 1 to 1 or 0 to 0
+        if (value == newOutput[g]) {
+            if (p.stats != null) p.stats.redundant();
+            return;
+        }
+        // Finally, we know that this output change should occur
+        gateOutput( p, g, value );
+        newOutput[g] = value;
+    }
+
+    // The sequential engine cancels changes instead of filtering them,
+    // unless the logic is four-valued, when changes need not alternate.
+    // A change of gate g is pending from the time settle() finds it
+    // until countGateOutput() would have been called for it; the changes
+    // alternate in value, the last being oldOutput[g].  If nothing else
+    // changes, a pending change takes effect only when it is the first of
+    // an odd number or the second of an even number, and then only if
+    // oldOutput[g] differs from newOutput[g].  So that one change is all
+    // the event set needs, and it moves or goes whenever gate g changes.
+
+    // Under the sequential engine, gate g changes to oldOutput[g]
+    private void pendingChange( Process p, int g ) {
+        // The changes whose time has passed were dropped at that time; this
+        // runs after every event at the current time
+        final long now = sim.time;
+        int e = pendHead[g];
+        while ((e >= 0) && (pendTime[e] <= now)) {
+            if (p.stats != null) {
+                if ((pendLength[g] & 1) == 0) {
+                    p.stats.filtered();
+                } else {
+                    p.stats.redundant();
+                }
+            }
+            final int following = pendNext[e];
+            freeEntry( e );
+            pendLength[g] = pendLength[g] - 1;
+            e = following;
+        }
+        pendHead[g] = e;
+        if (e < 0) pendTail[g] = -1;
+
+        // Add this change at the end of the list
+        e = newEntry();
+        pendTime[e] = now + delay[g];
+        pendSeq[e] = sim.reserve();
+        pendNext[e] = -1;
+        if (pendTail[g] < 0) {
+            pendHead[g] = e;
+        } else {
+            pendNext[pendTail[g]] = e;
+        }
+        pendTail[g] = e;
+        pendLength[g] = pendLength[g] + 1;
+
+        // Find the change that will take effect, and put it in place
+        int effective = -1;
+        if (oldOutput[g] != newOutput[g]) {
+            effective = pendHead[g];
+            if ((pendLength[g] & 1) == 0) effective = pendNext[effective];
+        }
+        if (effective == outEntry[g]) return;
+        if (outSlot[g] >= 0) {
+            sim.cancel( outSlot[g] );
+            if (p.stats != null) p.stats.cancelled();
+        }
+        outEntry[g] = effective;
+        outSlot[g] = -1;
+        if (effective >= 0) {
+            outSlot[g] = sim.scheduleAt( pendTime[effective],
+                pendSeq[effective], GATE_OUTPUT, g, oldOutput[g] );
+            if (p.stats != null) p.stats.scheduled( 1 );
+        }
+    }
+
+    // Under the sequential engine, the change of gate g to value happens
+    private void pendingOutput( Process p, int g, int value ) {
+        // The changes before it in the list were short pulses
+        final int last = outEntry[g];
+        int e;
+        do {
+            e = pendHead[g];
+            pendHead[g] = pendNext[e];
+            freeEntry( e );
+            pendLength[g] = pendLength[g] - 1;
+            if ((e != last) && (p.stats != null)) p.stats.filtered();
+        } while (e != last);
+        if (pendHead[g] < 0) pendTail[g] = -1;
+        outSlot[g] = -1;
+        outEntry[g] = -1;
+        gateOutput( p, g, value );
+        newOutput[g] = value;
+    }
+
+    // Get an unused pending change entry, growing the pool if there are none
+    private int newEntry() {
+        if (pendFree >= 0) {
+            final int e = pendFree;
+            pendFree = pendNext[e];
+            return e;
+        }
+        if (pendUsed == pendTime.length) {
+            final int capacity = pendUsed * 2;
+            pendTime = Arrays.copyOf( pendTime, capacity );
+            pendSeq = Arrays.copyOf( pendSeq, capacity );
+            pendNext = Arrays.copyOf( pendNext, capacity );
+        }
+        pendUsed = pendUsed + 1;
+        return pendUsed - 1;
+    }
+
+    // Hand back a pending change entry
+    private void freeEntry( int e ) {
+        pendNext[e] = pendFree;
+        pendFree = e;
+    }
+
+    // Input gate g makes the next change in its sequence
+    private void inputNext( Process p, int g, int value ) {
+        changesLeft[g] = changesLeft[g] - 1;
+        // First change the output
+        gateOutput( p, g, value );
+        // Second schedule the next change, if any
+        if (changesLeft[g] > 0) {
+            p.schedule( delay[g], INPUT_NEXT, g, 1 - value );
+            if (p.stats != null) p.stats.scheduled( 1 );
+        }
+    }
+
+    // The output of gate g actually changes to value
+    private void gateOutput( Process p, int g, int value ) {
+        if (tracedGate[g]) p.gateChange( g, value );
+        for (int i = fanStart[g]; i < fanStart[g + 1]; i++) {
+            final int w = fanWire[i];
+            p.schedule( wireDelay[w], WIRE_OUTPUT, w, value );
+        }
+        if (p.stats != null) {
+            p.stats.changed( g );
+            p.stats.scheduled( fanStart[g + 1] - fanStart[g] );
+        }
+    }
+}
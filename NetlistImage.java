@@ -0,0 +1,125 @@
+// NetlistImage.java
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/** A circuit compiled once and saved, so that it starts without parsing.
+ *  <p>
+ *  An image holds the netlist of a circuit that has passed its sanity
+ *  checks, as flat arrays of the gate and wire attributes, the fan-out
+ *  arrays and the names, followed by the probes selected for tracing as
+ *  gate ids.  Loading maps the file into memory and copies the arrays out
+ *  in bulk, so the time to start is about the time to read the file.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see SimulationContext
+ */
+public class NetlistImage {
+
+    /** The first int of every image, "LSIM".
+     */
+    public static final int MAGIC = 0x4C53494D;
+
+    /** The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /** Test whether a file is an image, by its first int.
+     *  @param fileName the file
+     *  @return true if it starts like an image
+     */
+    public static boolean isImage( String fileName ) {
+        try (DataInputStream in
+            = new DataInputStream( new FileInputStream( fileName ) )
+        ) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Save the compiled netlist of a context, and its probes.
+     *  @param ctx the context, with its netlist compiled
+     *  @param fileName the file to save it in
+     */
+    public static void save( SimulationContext ctx, String fileName ) {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                    new FileOutputStream( fileName ), 1 << 16
+                )
+            )
+        ) {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            ctx.netlist().writeImage( out );
+            int count = 0;
+            for (Iterator <int[]> i = ctx.probes(); i.hasNext(); i.next()) {
+                count = count + 1;
+            }
+            out.writeInt( count );
+            for (Iterator <int[]> i = ctx.probes(); i.hasNext();) {
+                final int[] p = i.next();
+                out.writeByte( p.length );
+                for (int id: p) out.writeInt( id );
+            }
+        } catch (IOException e) {
+            ctx.errors.fatal( "Can't write the image: " + e.getMessage() );
+        }
+    }
+
+    /** Load the netlist of a context, and its probes, from an image.
+     *  @param ctx an empty context
+     *  @param fileName the file the image was saved in
+     */
+    public static void load( SimulationContext ctx, String fileName ) {
+        final Errors errors = ctx.errors;
+        try (FileChannel channel = FileChannel.open(
+                Paths.get( fileName ), StandardOpenOption.READ
+            )
+        ) {
+            final ByteBuffer b = channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size()
+            );
+            if (b.getInt() != MAGIC) {
+                errors.fatal( "Not a netlist image" );
+            }
+            if (b.getInt() != VERSION) {
+                errors.fatal( "Netlist image version unsupported" );
+            }
+            final Netlist net = Netlist.readImage( b, errors );
+            ctx.load( net );
+            final int count = b.getInt();
+            for (int i = 0; i < count; i++) {
+                final byte length = b.get();
+                if ((length < 1) || (length > 2)) {
+                    errors.fatal( "Netlist image damaged" );
+                }
+                final int[] p = new int[length];
+                for (int j = 0; j < p.length; j++) {
+                    p[j] = b.getInt();
+                    if ((p[j] < 0) || (p[j] >= net.gates)) {
+                        errors.fatal( "Netlist image damaged" );
+                    }
+                }
+                ctx.addProbe( p );
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+            | IllegalArgumentException e
+        ) {
+            errors.fatal( "Netlist image damaged" );
+        } catch (IOException e) {
+            errors.fatal( "Can't read the image: " + e.getMessage() );
+        }
+    }
+}
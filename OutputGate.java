@@ -1,28 +1,28 @@
 // OutputGate.java
 
-import java.util.Scanner;
-
 /** Output gates will provide output from the simulation.
  *  @author Piotr Smietana
- *  @version 2019-04-29
+ *  @version 2026-10-18
  *  @see Gate
  */
 public class OutputGate extends Gate {
 
     /** Constructor, used only from within subclasses.
+     *  @param ctx the context the gate belongs to
      *  @param sc the scanner
      *  @param name the name of the new gate
      */
-    public OutputGate( Scanner sc, String name ){
-        super( name );
+    public OutputGate( SimulationContext ctx, ByteScanner sc, String name ){
+        super( ctx, name );
         ScanSupport.finishLine( sc, () -> this + ": followed by" );
     }
 
     /** Every subclass of gate offers a sanity check.
+     *  @param errors where failures are reported
      */
-    public void sanityCheck() {
+    public void sanityCheck( Errors errors ) {
         if (this.outgoing.peek() != null) {
-            Errors.warn( this.toString() + ": has outgoing wires" );
+            errors.warn( this.toString() + ": has outgoing wires" );
         }
     }
 
@@ -32,15 +32,10 @@ public class OutputGate extends Gate {
         return super.toString() + " output";
     }
 
-    // Simulation methods
-
-    /** Tell the gate that one of its inputs has changed.
-     *  <p>
-     *  Each subclass must implement this method.
-     *  @param value the new value of that input
+    /** Record this gate's attributes in the netlist.
+     *  @param net the netlist being compiled
      */
-    public void inputChange( int value ) {
-        // Nothing to be done
-        // End of circuit
+    void compile( Netlist net ) {
+        net.setGate( id, name, Netlist.OUTPUT, Float.NaN, 0, 0 );
     }
 }
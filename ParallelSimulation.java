@@ -0,0 +1,464 @@
+// ParallelSimulation.java
+
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.Supplier;
+
+/** Parallel engine that runs partitions of a netlist on separate threads.
+ *  <p>
+ *  The gates are divided into partitions, each with its own event set and
+ *  thread.  Events only pass between partitions along wires, so the least
+ *  delay of any wire between partitions is a lookahead: from the earliest
+ *  pending event, every partition can safely run that far ahead on its
+ *  own.  Each such time window ends at a barrier, where the events the
+ *  partitions processed are merged into the order the sequential engine
+ *  processes them in.  Numbering new events in that order gives them the
+ *  sequence numbers the sequential engine gives them, so ties between
+ *  equal times are broken the same way, and writing the trace in that
+ *  order makes the trace the same.
+ *  <p>
+ *  Only events that schedule something or report a change are logged for
+ *  the merge; the rest leave no trace and don't affect the numbering.
+ *  Once the events at one time are over, each partition evaluates the
+ *  gates they touched, as the sequential engine does, and logs what each
+ *  evaluation schedules under the number of the event that first touched
+ *  the gate.  Those entries rank after the events at that time; events at
+ *  the same time that they schedule rank after them in turn.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see Simulation
+ */
+public class ParallelSimulation {
+
+    // Sequence numbers from here up are provisional, local to a partition
+    private static final long PROVISIONAL = 1L << 62;
+
+    // Kinds of change reported by a logged event
+    private static final byte NONE = 0;
+    private static final byte GATE = 1;
+    private static final byte WIRE = 2;
+
+    private final SimulationContext context;
+    private final Netlist net;
+    private final TraceSink trace;
+
+    // Makes event sets of the kind asked for
+    private final Supplier <EventSet> newSet;
+
+    // The partition that owns each gate, and the partitions
+    private final int[] owner;
+    private final Partition[] parts;
+
+    // The least delay of any wire between two partitions, in ticks
+    private final long lookahead;
+
+    // The sequence number of the next event, shared by all partitions
+    private long nextSeq = 0;
+
+    // The current window starts at this time and ends just before end
+    private long start;
+    private long end;
+    private boolean finished = false;
+
+    // What went wrong in some thread, ending the run
+    private volatile RuntimeException failure = null;
+
+    /** Partition the netlist of a context.
+     *  <p>
+     *  Gates are shared out in id order, so that each partition gets about
+     *  the same number of gates and wires.
+     *  @param ctx the context, with its netlist compiled and traced
+     *  @param count the number of partitions, one per thread
+     *  @param makeSet makes the event set of each partition
+     */
+    public ParallelSimulation(
+        SimulationContext ctx, int count, Supplier <EventSet> makeSet
+    ) {
+        context = ctx;
+        newSet = makeSet;
+        final Netlist n = ctx.netlist();
+        net = n;
+        trace = n.traceSink();
+        owner = new int[n.gates];
+        long total = 0;
+        for (int g = 0; g < n.gates; g++) total = total + 1 + n.fanOut( g );
+        long sum = 0;
+        for (int g = 0; g < n.gates; g++) {
+            owner[g] = (int)(sum * count / Math.max( total, 1 ));
+            sum = sum + 1 + n.fanOut( g );
+        }
+        parts = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            parts[i] = new Partition( i, makeSet.get() );
+        }
+        long l = Long.MAX_VALUE;
+        for (int w = 0; w < n.wires; w++) {
+            if (owner[n.wireSource( w )] != owner[n.wireDestination( w )]) {
+                l = Math.min( l, n.wireDelay( w ) );
+            }
+        }
+        lookahead = l;
+    }
+
+    /** Run the simulation of the netlist from time 0 to the end.
+     *  <p>
+     *  With only one partition, or no lookahead because some wire between
+     *  partitions has no delay, this uses the sequential engine of the
+     *  context instead.
+     */
+    public void run() {
+        final RunStats stats = net.stats();
+        if ((parts.length == 1) || (lookahead == 0)) {
+            final EventSet set = newSet.get();
+            context.simulation.setEventSet( set );
+            if (stats != null) {
+                stats.watch( set );
+                stats.setClock( () -> context.simulation.time );
+            }
+            net.launch( context.simulation );
+            context.simulation.run();
+            return;
+        }
+        if (stats != null) {
+            for (Partition p: parts) p.stats = stats.newPart( p.set );
+            stats.setClock( () -> start );
+        }
+        final Netlist.Process launcher = new Netlist.Process() {
+            void schedule( long delay, int k, int target, int value ) {
+                final Partition p = parts[owner[net.gateOf( k, target )]];
+                p.set.add( delay, nextSeq, k, target, value );
+                nextSeq = nextSeq + 1;
+            }
+
+            void gateChange( int g, int value ) {
+                trace.gateChange( 0, g, value );
+            }
+
+            void wireChange( int w, int value ) {
+                trace.wireChange( 0, w, value );
+            }
+        };
+        launcher.stats = stats;
+        net.launch( launcher );
+        nextWindow();
+
+        final CyclicBarrier barrier
+            = new CyclicBarrier( parts.length, () -> merge() );
+        final Thread[] threads = new Thread[parts.length - 1];
+        for (int i = 1; i < parts.length; i++) {
+            final Partition p = parts[i];
+            threads[i - 1] = new Thread( () -> work( p, barrier ) );
+            threads[i - 1].start();
+        }
+        work( parts[0], barrier );
+        for (Thread t: threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                context.errors.fatal( "Parallel simulation interrupted" );
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    // Run one partition, window by window, until there are no events left
+    private void work( Partition p, CyclicBarrier barrier ) {
+        try {
+            while (!finished) {
+                p.runWindow();
+                barrier.await();
+            }
+        } catch (BrokenBarrierException e) {
+            // Another thread failed, and has recorded why
+        } catch (InterruptedException e) {
+            fail(
+                new IllegalStateException( "Parallel simulation interrupted" ),
+                barrier
+            );
+        } catch (RuntimeException e) {
+            fail( e, barrier );
+        }
+    }
+
+    // Record why the run failed, and release the threads still waiting
+    private void fail( RuntimeException e, CyclicBarrier barrier ) {
+        if (failure == null) failure = e;
+        barrier.reset();
+    }
+
+    // Find the window starting at the earliest pending event
+    private void nextWindow() {
+        boolean pending = false;
+        long first = Long.MAX_VALUE;
+        for (Partition p: parts) {
+            if (!p.set.isEmpty()) {
+                pending = true;
+                first = Math.min( first, p.set.time( p.set.first() ) );
+            }
+        }
+        if (!pending) {
+            finished = true;
+            return;
+        }
+        start = first;
+        // Without wires between partitions, the window never ends
+        end = (lookahead > Long.MAX_VALUE - start)
+            ? Long.MAX_VALUE : start + lookahead;
+    }
+
+    // At the end of a window, put what the partitions did in order
+    private void merge() {
+        final int[] head = new int[parts.length];
+        for (;;) {
+            // Find the earliest logged event that hasn't been merged
+            Partition best = null;
+            long bestTime = 0;
+            int bestRank = 0;
+            long bestKey = 0;
+            for (Partition p: parts) {
+                final int h = head[p.index];
+                if (h == p.entries) continue;
+                final long t = p.entryTime[h];
+                final int r = p.entryRank[h];
+                final long k = p.keyOf( h );
+                if ((best == null) || (t < bestTime)
+                    || ((t == bestTime) && (r < bestRank))
+                    || ((t == bestTime) && (r == bestRank) && (k < bestKey))
+                ) {
+                    best = p;
+                    bestTime = t;
+                    bestRank = r;
+                    bestKey = k;
+                }
+            }
+            if (best == null) break;
+            final int h = head[best.index];
+            head[best.index] = h + 1;
+
+            // Report its change and number the events it scheduled
+            final int id = best.traceId[h];
+            if (best.traceKind[h] == GATE) {
+                if (net.kind( id ) == Netlist.INPUT) {
+                    net.setChangesLeft( id, best.traceLeft[h] );
+                }
+                trace.gateChange( bestTime, id, best.traceValue[h] );
+            } else if (best.traceKind[h] == WIRE) {
+                trace.wireChange( bestTime, id, best.traceValue[h] );
+            }
+            final int first = best.entryFirst[h];
+            for (int c = first; c < first + best.entryCount[h]; c++) {
+                best.newSeq[c] = nextSeq;
+                nextSeq = nextSeq + 1;
+            }
+        }
+        for (Partition p: parts) p.renumber();
+        for (Partition p: parts) p.deliver();
+        for (Partition p: parts) p.reset();
+        nextWindow();
+    }
+
+    // One partition of the netlist, run by one thread
+    private class Partition extends Netlist.Process {
+
+        final int index;
+        final EventSet set;
+
+        // The time and sequence number of the event being processed, and
+        // its rank among those at that time: twice the number of earlier
+        // batches at the time, plus one while evaluating touched gates
+        private long time;
+        private long key;
+        private int rank;
+
+        // The number of the event that first touched each touched gate
+        private long[] touchKey = new long[64];
+
+        // Its entry in the log, or -1 if it hasn't been logged yet
+        private int entry;
+
+        // The log of events processed in this window
+        int entries = 0;
+        long[] entryTime = new long[64];
+        long[] entryKey = new long[64];
+        int[] entryRank = new int[64];
+        int[] entryFirst = new int[64];
+        int[] entryCount = new int[64];
+        byte[] traceKind = new byte[64];
+        int[] traceId = new int[64];
+        byte[] traceValue = new byte[64];
+        int[] traceLeft = new int[64];
+
+        // The events scheduled in this window, counting from 0, with the
+        // slot of those pending here, or -1, and their final numbers
+        private int created = 0;
+        private int[] slotOf = new int[64];
+        long[] newSeq = new long[64];
+
+        // Events scheduled in this window for other partitions
+        private int sent = 0;
+        private int[] sentTo = new int[64];
+        private long[] sentTime = new long[64];
+        private int[] sentKind = new int[64];
+        private int[] sentTarget = new int[64];
+        private int[] sentValue = new int[64];
+        private int[] sentNumber = new int[64];
+
+        Partition( int i, EventSet s ) {
+            index = i;
+            set = s;
+        }
+
+        // Process the events in this partition that fall in the window,
+        // evaluating the touched gates whenever the events at a time are over
+        void runWindow() {
+            for (;;) {
+                final boolean more
+                    = !set.isEmpty() && (set.time( set.first() ) < end);
+                if ((touchedCount > 0)
+                    && (!more || (set.time( set.first() ) != time))
+                ) {
+                    rank = rank + 1;
+                    net.settle( this );
+                    rank = rank + 1;
+                    continue;
+                }
+                if (!more) return;
+                final int s = set.remove();
+                if (set.time( s ) != time) rank = 0;
+                time = set.time( s );
+                key = set.seq( s );
+                entry = -1;
+                if (key >= PROVISIONAL) slotOf[(int)(key - PROVISIONAL)] = -1;
+                final int k = set.kind( s );
+                final int target = set.target( s );
+                final int value = set.value( s );
+                set.release( s );
+                final int first = touchedCount;
+                net.dispatch( this, k, target, value );
+                if (touchedCount > first) {
+                    if (touchedCount > touchKey.length) {
+                        touchKey = Arrays.copyOf( touchKey, touched.length );
+                    }
+                    touchKey[first] = key;
+                }
+            }
+        }
+
+        void evaluating( int i ) {
+            key = touchKey[i];
+            entry = -1;
+        }
+
+        void schedule( long delay, int k, int target, int value ) {
+            final int e = log();
+            final int c = created;
+            if (c == slotOf.length) {
+                slotOf = Arrays.copyOf( slotOf, c * 2 );
+                newSeq = Arrays.copyOf( newSeq, c * 2 );
+            }
+            created = c + 1;
+            entryCount[e] = entryCount[e] + 1;
+            final long t = time + delay;
+            final int q = owner[net.gateOf( k, target )];
+            if (q == index) {
+                slotOf[c] = set.add( t, PROVISIONAL + c, k, target, value );
+                return;
+            }
+            slotOf[c] = -1;
+            if (sent == sentTo.length) growSent();
+            sentTo[sent] = q;
+            sentTime[sent] = t;
+            sentKind[sent] = k;
+            sentTarget[sent] = target;
+            sentValue[sent] = value;
+            sentNumber[sent] = c;
+            sent = sent + 1;
+        }
+
+        void gateChange( int g, int value ) {
+            final int e = log();
+            traceKind[e] = GATE;
+            traceId[e] = g;
+            traceValue[e] = (byte)value;
+            traceLeft[e] = net.changesLeft( g );
+        }
+
+        void wireChange( int w, int value ) {
+            final int e = log();
+            traceKind[e] = WIRE;
+            traceId[e] = w;
+            traceValue[e] = (byte)value;
+        }
+
+        // The final sequence number of a logged event
+        long keyOf( int e ) {
+            final long k = entryKey[e];
+            if (k < PROVISIONAL) return k;
+            return newSeq[(int)(k - PROVISIONAL)];
+        }
+
+        // Give the events still pending here their final numbers
+        void renumber() {
+            for (int c = 0; c < created; c++) {
+                if (slotOf[c] >= 0) set.setSeq( slotOf[c], newSeq[c] );
+            }
+        }
+
+        // Hand the events sent to other partitions over to them
+        void deliver() {
+            for (int i = 0; i < sent; i++) {
+                parts[sentTo[i]].set.add(
+                    sentTime[i], newSeq[sentNumber[i]],
+                    sentKind[i], sentTarget[i], sentValue[i]
+                );
+            }
+        }
+
+        // Start a new window
+        void reset() {
+            entries = 0;
+            created = 0;
+            sent = 0;
+        }
+
+        // The log entry of the event being processed, made on first use
+        private int log() {
+            if (entry >= 0) return entry;
+            if (entries == entryTime.length) growLog();
+            entry = entries;
+            entries = entries + 1;
+            entryTime[entry] = time;
+            entryKey[entry] = key;
+            entryRank[entry] = rank;
+            entryFirst[entry] = created;
+            entryCount[entry] = 0;
+            traceKind[entry] = NONE;
+            return entry;
+        }
+
+        private void growLog() {
+            final int n = entries * 2;
+            entryTime = Arrays.copyOf( entryTime, n );
+            entryKey = Arrays.copyOf( entryKey, n );
+            entryRank = Arrays.copyOf( entryRank, n );
+            entryFirst = Arrays.copyOf( entryFirst, n );
+            entryCount = Arrays.copyOf( entryCount, n );
+            traceKind = Arrays.copyOf( traceKind, n );
+            traceId = Arrays.copyOf( traceId, n );
+            traceValue = Arrays.copyOf( traceValue, n );
+            traceLeft = Arrays.copyOf( traceLeft, n );
+        }
+
+        private void growSent() {
+            final int n = sent * 2;
+            sentTo = Arrays.copyOf( sentTo, n );
+            sentTime = Arrays.copyOf( sentTime, n );
+            sentKind = Arrays.copyOf( sentKind, n );
+            sentTarget = Arrays.copyOf( sentTarget, n );
+            sentValue = Arrays.copyOf( sentValue, n );
+            sentNumber = Arrays.copyOf( sentNumber, n );
+        }
+    }
+}
@@ -0,0 +1,386 @@
+// RunStats.java
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Counters of what happens while a netlist is simulated.
+ *  <p>
+ *  Counting is optional.  A Netlist.Process counts only once it has been
+ *  given a RunStats, so with statistics off the cost is a test of a null
+ *  field at each counting point.  A parallel engine gives each of its
+ *  threads a part of its own, and the totals add up the parts.  The
+ *  totals can be read through JMX while the simulation runs, and are then
+ *  approximate, as the counters are updated without synchronization.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see ParallelSimulation
+ *  @see RunStatsMBean
+ */
+public class RunStats implements RunStatsMBean {
+
+    // Events executed, by kind: input changes, gate outputs, wire outputs
+    private long inputEvents = 0;
+    private long gateEvents = 0;
+    private long wireEvents = 0;
+
+    // Events scheduled, and taken out again before their time
+    private long scheduled = 0;
+    private long cancelled = 0;
+
+    // Gate outputs dropped by the low-pass filter, because the gate changed
+    // back before the output did, or because the output already had that
+    // value
+    private long filtered = 0;
+    private long redundant = 0;
+
+    // Evaluations of a gate, once the changes to its inputs at one time
+    // are in, that left its logical value unchanged
+    private long unchanged = 0;
+
+    // Output changes, in total and for each gate
+    private long changes = 0;
+    private long[] toggles = new long[0];
+
+    // The event set of this part, for its peak size
+    private EventSet set = null;
+
+    // The parts of a parallel run, each counting for one thread
+    private final List <RunStats> parts = new CopyOnWriteArrayList <> ();
+
+    // Where the simulated time comes from, in ticks, and the netlist whose
+    // time base they are ticks of
+    private LongSupplier clock = () -> 0;
+    private Netlist net = null;
+
+    // Wall clock time of the phases of the run, and of the simulation
+    private final List <String> phaseNames = new ArrayList <> ();
+    private final List <Long> phaseNanos = new ArrayList <> ();
+    private long runStart = 0;
+    private long runEnd = 0;
+
+    // The name this is registered under with JMX, or null
+    private ObjectName registered = null;
+
+    /** Allocate the toggle counts of a netlist.
+     *  @param n the netlist
+     */
+    void setNetlist( Netlist n ) {
+        toggles = new long[n.gates];
+        net = n;
+    }
+
+    /** Make a part of these statistics for one thread of a parallel run.
+     *  <p>
+     *  Each gate belongs to one thread, so the parts share toggle counts.
+     *  @param s the event set of that thread
+     *  @return the part
+     */
+    RunStats newPart( EventSet s ) {
+        final RunStats p = new RunStats();
+        p.toggles = toggles;
+        p.set = s;
+        parts.add( p );
+        return p;
+    }
+
+    /** Watch an event set for its peak size.
+     *  @param s the event set
+     */
+    public void watch( EventSet s ) {
+        set = s;
+    }
+
+    /** Set where the simulated time comes from.
+     *  @param c the clock, in ticks of the netlist's time base
+     */
+    public void setClock( LongSupplier c ) {
+        clock = c;
+    }
+
+    /** Record the wall clock time taken by one phase of the run.
+     *  @param name the name of the phase
+     *  @param nanos the time in nanoseconds
+     */
+    public void phase( String name, long nanos ) {
+        phaseNames.add( name );
+        phaseNanos.add( nanos );
+    }
+
+    /** Mark the start of the simulation proper.
+     */
+    public void start() {
+        runStart = System.nanoTime();
+    }
+
+    /** Mark the end of the simulation proper.
+     */
+    public void stop() {
+        runEnd = System.nanoTime();
+        phase( "simulate", runEnd - runStart );
+    }
+
+    // Counting, called from the netlist
+
+    /** Count an executed event.
+     *  @param kind the kind of the event
+     */
+    void executed( int kind ) {
+        if (kind == Netlist.WIRE_OUTPUT) {
+            wireEvents = wireEvents + 1;
+        } else if (kind == Netlist.GATE_OUTPUT) {
+            gateEvents = gateEvents + 1;
+        } else {
+            inputEvents = inputEvents + 1;
+        }
+    }
+
+    /** Count scheduled events.
+     *  @param n how many
+     */
+    void scheduled( int n ) {
+        scheduled = scheduled + n;
+    }
+
+    /** Count an event cancelled before its time.
+     */
+    void cancelled() {
+        cancelled = cancelled + 1;
+    }
+
+    /** Count a gate output dropped as a short pulse.
+     */
+    void filtered() {
+        filtered = filtered + 1;
+    }
+
+    /** Count a gate output dropped as no change.
+     */
+    void redundant() {
+        redundant = redundant + 1;
+    }
+
+    /** Count a gate evaluation that left the value of the gate unchanged.
+     */
+    void unchanged() {
+        unchanged = unchanged + 1;
+    }
+
+    /** Count an output change.
+     *  @param g the gate id
+     */
+    void changed( int g ) {
+        changes = changes + 1;
+        toggles[g] = toggles[g] + 1;
+    }
+
+    // Totals over this and all its parts, the view offered through JMX
+
+    /** Events executed, in total.
+     *  @return the count
+     */
+    public long getEventsExecuted() {
+        return getInputEvents() + getGateEvents() + getWireEvents();
+    }
+
+    /** Input change events executed.
+     *  @return the count
+     */
+    public long getInputEvents() {
+        long n = inputEvents;
+        for (RunStats p: parts) n = n + p.inputEvents;
+        return n;
+    }
+
+    /** Gate output events executed.
+     *  @return the count
+     */
+    public long getGateEvents() {
+        long n = gateEvents;
+        for (RunStats p: parts) n = n + p.gateEvents;
+        return n;
+    }
+
+    /** Wire output events executed.
+     *  @return the count
+     */
+    public long getWireEvents() {
+        long n = wireEvents;
+        for (RunStats p: parts) n = n + p.wireEvents;
+        return n;
+    }
+
+    /** Events scheduled.
+     *  @return the count
+     */
+    public long getEventsScheduled() {
+        long n = scheduled;
+        for (RunStats p: parts) n = n + p.scheduled;
+        return n;
+    }
+
+    /** Events cancelled before their time.
+     *  @return the count
+     */
+    public long getEventsCancelled() {
+        long n = cancelled;
+        for (RunStats p: parts) n = n + p.cancelled;
+        return n;
+    }
+
+    /** Gate outputs dropped by the low-pass filter as short pulses.
+     *  @return the count
+     */
+    public long getPulsesFiltered() {
+        long n = filtered;
+        for (RunStats p: parts) n = n + p.filtered;
+        return n;
+    }
+
+    /** Gate outputs dropped because they changed nothing.
+     *  @return the count
+     */
+    public long getRedundantOutputs() {
+        long n = redundant;
+        for (RunStats p: parts) n = n + p.redundant;
+        return n;
+    }
+
+    /** Gate evaluations that left the value of their gate unchanged.
+     *  @return the count
+     */
+    public long getUnchangedEvaluations() {
+        long n = unchanged;
+        for (RunStats p: parts) n = n + p.unchanged;
+        return n;
+    }
+
+    /** Gate output changes.
+     *  @return the count
+     */
+    public long getOutputChanges() {
+        long n = changes;
+        for (RunStats p: parts) n = n + p.changes;
+        return n;
+    }
+
+    /** The peak number of pending events, the sum of the peaks of the
+     *  parts in a parallel run.
+     *  @return the count
+     */
+    public long getPeakPendingEvents() {
+        long n = (set == null) ? 0 : set.peakSize();
+        for (RunStats p: parts) n = n + p.getPeakPendingEvents();
+        return n;
+    }
+
+    /** The simulated time reached.
+     *  @return the time, in time units
+     */
+    public double getSimulatedTime() {
+        if (net == null) return 0;
+        return net.units( clock.getAsLong() );
+    }
+
+    /** Events executed per second of wall clock time so far.
+     *  @return the rate
+     */
+    public double getEventsPerSecond() {
+        if (runStart == 0) return 0;
+        final long end = (runEnd == 0) ? System.nanoTime() : runEnd;
+        return getEventsExecuted() * 1e9 / Math.max( end - runStart, 1 );
+    }
+
+    /** Make the counters visible through JMX.
+     *  @param name the name to register them under
+     *  @param errors where failure is reported
+     */
+    public void register( String name, Errors errors ) {
+        try {
+            final ObjectName n
+                = new ObjectName( "LogicSimulator:type=RunStats,name="
+                    + ObjectName.quote( name ) );
+            ManagementFactory.getPlatformMBeanServer().registerMBean( this, n );
+            registered = n;
+        } catch( JMException e ) {
+            errors.warn( "Can't register with JMX: " + e.getMessage() );
+        }
+    }
+
+    /** Withdraw the counters from JMX, if they were registered.
+     */
+    public void unregister() {
+        if (registered == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean( registered );
+        } catch( JMException e ) {
+            // Already gone
+        }
+        registered = null;
+    }
+
+    /** Print a report of the run.
+     *  @param out where to print it
+     *  @param net the netlist, to name the gates
+     *  @param top how many of the busiest gates to list
+     */
+    public void report( PrintStream out, Netlist net, int top ) {
+        out.println( "Run statistics" );
+        final StringBuilder b = new StringBuilder( "  wall time    " );
+        for (int i = 0; i < phaseNames.size(); i++) {
+            b.append( ' ' ).append( phaseNames.get( i ) ).append( ' ' ).append(
+                String.format( "%.1f ms", phaseNanos.get( i ) / 1e6 )
+            );
+            if (i + 1 < phaseNames.size()) b.append( ',' );
+        }
+        out.println( b );
+        line( out, "events executed", getEventsExecuted() );
+        line( out, "  input changes", getInputEvents() );
+        line( out, "  gate outputs", getGateEvents() );
+        line( out, "  wire outputs", getWireEvents() );
+        line( out, "events scheduled", getEventsScheduled() );
+        line( out, "events cancelled", getEventsCancelled() );
+        line( out, "pulses filtered", getPulsesFiltered() );
+        line( out, "redundant outputs", getRedundantOutputs() );
+        line( out, "unchanged evaluations", getUnchangedEvaluations() );
+        line( out, "output changes", getOutputChanges() );
+        line( out, "peak pending events", getPeakPendingEvents() );
+        out.printf( "  %-22s %14s%n", "simulated time",
+            net.timeString( clock.getAsLong() ) );
+        out.printf( "  %-22s %14.0f%n", "events per second",
+            getEventsPerSecond() );
+
+        // The busiest gates, kept in descending order of toggles
+        final int n = Math.min( top, toggles.length );
+        final int[] busiest = new int[n];
+        int found = 0;
+        for (int g = 0; g < toggles.length; g++) {
+            if (toggles[g] == 0) continue;
+            if ((found == n) && (toggles[g] <= toggles[busiest[n - 1]])) {
+                continue;
+            }
+            int i = (found < n) ? found++ : n - 1;
+            while ((i > 0) && (toggles[busiest[i - 1]] < toggles[g])) {
+                busiest[i] = busiest[i - 1];
+                i = i - 1;
+            }
+            busiest[i] = g;
+        }
+        if (found > 0) out.println( "  busiest gates" );
+        for (int i = 0; i < found; i++) {
+            out.printf( "  %14d  %s%n",
+                toggles[busiest[i]], net.gateLabel( busiest[i] ) );
+        }
+    }
+
+    private static void line( PrintStream out, String label, long value ) {
+        out.printf( "  %-22s %14d%n", label, value );
+    }
+}
@@ -0,0 +1,59 @@
+// RunStatsMBean.java
+
+/** The statistics of a run, as seen through JMX.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see RunStats
+ */
+public interface RunStatsMBean {
+
+    /** Events executed, in total.
+     *  @return the count
+     */
+    long getEventsExecuted();
+
+    /** Events scheduled.
+     *  @return the count
+     */
+    long getEventsScheduled();
+
+    /** Events cancelled before their time.
+     *  @return the count
+     */
+    long getEventsCancelled();
+
+    /** Gate outputs dropped by the low-pass filter as short pulses.
+     *  @return the count
+     */
+    long getPulsesFiltered();
+
+    /** Gate outputs dropped because they changed nothing.
+     *  @return the count
+     */
+    long getRedundantOutputs();
+
+    /** Gate evaluations that left the value of their gate unchanged.
+     *  @return the count
+     */
+    long getUnchangedEvaluations();
+
+    /** Gate output changes.
+     *  @return the count
+     */
+    long getOutputChanges();
+
+    /** The peak number of pending events.
+     *  @return the count
+     */
+    long getPeakPendingEvents();
+
+    /** The simulated time reached.
+     *  @return the time
+     */
+    double getSimulatedTime();
+
+    /** Events executed per second of wall clock time so far.
+     *  @return the rate
+     */
+    double getEventsPerSecond();
+}
@@ -1,25 +1,13 @@
 // ScanSupport.java
 
-import java.util.regex.Pattern;
-import java.util.Scanner;
-
-/** Support package for application dependent extensions to class Scanner.
+/** Support package for application dependent extensions to ByteScanner.
  *  @author Piotr Smietana
- *  @version 2019-03-04
+ *  @version 2026-10-18
  *  @see Errors
+ *  @see ByteScanner
  */
 public class ScanSupport {
 
-    // Match one legal name
-    private static final Pattern name =
-        Pattern.compile( "[A-Za-z]*[A-Za-z0-9]" );
-    // Match any number of blanks
-    private static final Pattern blanks =
-        Pattern.compile( "[ \t]*" );
-    // Match text up to newline
-    private static final Pattern theRest =
-        Pattern.compile( "[^\n]*" );
-
     /** Support interface for passing deferred computation of message text.
      */
     public interface MessageCarrier {
@@ -32,25 +20,40 @@ public class ScanSupport {
      *  @return the name, or null if there is no name
      *  Typically called as ScanSupport.scanName( sc, () -> string + expr )
      */
-    public static String scanName( Scanner sc, MessageCarrier msg ) {
-        if (sc.hasNext( name )) return sc.next(name);
-        Errors.warn( msg.content() );
+    public static String scanName( ByteScanner sc, MessageCarrier msg ) {
+        if (sc.hasNextName()) return sc.next();
+        sc.errors().warn( msg.content() );
         return null;
     }
 
+    /** Scan the names up to the end of the line, less any comment.
+     *  @param sc the scanner to read from
+     *  @return the names, possibly none
+     */
+    public static String[] scanNames( ByteScanner sc ) {
+        final String line = sc.restOfLine();
+        final int comment = line.indexOf( "--" );
+        final String names
+            = ((comment < 0) ? line : line.substring( 0, comment )).trim();
+        if ("".equals( names )) return new String[0];
+        return names.split( "\\s+" );
+    }
+
     /** Scan and return one nonnegative int, if available.
      *  @param sc the scanner to read from
      *  @param msg the message prefix to output if there is no int
      *  @return the value, or 0 if there is no number
      *  Typically called as ...scanPositiveInt( sc, () -> string + expr )
      */
-    public static int scanPositiveInt( Scanner sc, MessageCarrier msg ) {
+    public static int scanPositiveInt( ByteScanner sc, MessageCarrier msg ) {
         if (sc.hasNextInt()) {
             int value = sc.nextInt();
             if (value >= 0) return value;
-            Errors.warn( msg.content() + " " + value + ": must be positive" );
+            sc.errors().warn(
+                msg.content() + " " + value + ": must be positive"
+            );
             }
-        Errors.warn( msg.content() + ": integer value expected" );
+        sc.errors().warn( msg.content() + ": integer value expected" );
         return 0;
     }
 
@@ -60,13 +63,24 @@ public class ScanSupport {
      *  @return the value, or NaN if there is no number
      *  Typically called as ...scanPositiveFloat( sc, () -> string + expr )
      */
-    public static float scanPositiveFloat( Scanner sc, MessageCarrier msg ) {
+    public static float scanPositiveFloat(
+        ByteScanner sc, MessageCarrier msg
+    ) {
         if (sc.hasNextFloat()) {
             float value = sc.nextFloat();
+            if (Float.isInfinite( value )) {
+                // No time base can hold it
+                sc.errors().warn(
+                    msg.content() + " " + value + ": must be finite"
+                );
+                return Float.NaN;
+            }
             if (value >= 0.0F) return value;
-            Errors.warn( msg.content() + " " + value + ": must be positive" );
+            sc.errors().warn(
+                msg.content() + " " + value + ": must be positive"
+            );
             }
-        Errors.warn( msg.content() + ": float value expected" );
+        sc.errors().warn( msg.content() + ": float value expected" );
         return Float.NaN;
     }
 
@@ -75,12 +89,10 @@ public class ScanSupport {
      *  @param msg the object that computes the message to output if needed
      *  Typically called as ScanSupport.finishLine( sc, () -> string + expr )
      */
-    public static void finishLine( Scanner sc, MessageCarrier msg ) {
-        sc.skip( blanks );
-        sc.skip( theRest );
-        final String remainder = sc.match().group( 0 );
+    public static void finishLine( ByteScanner sc, MessageCarrier msg ) {
+        final String remainder = sc.restOfLine();
         if ("".equals( remainder )) return;
         if (remainder.startsWith ("--")) return;
-        Errors.warn( msg.content() + ": " + remainder );
+        sc.errors().warn( msg.content() + ": " + remainder );
     }
 }
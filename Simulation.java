@@ -1,50 +1,322 @@
 // Simulation.java
 
-import java.util.PriorityQueue;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /** Simulation framework
+ *  <p>
+ *  Each Simulation has its own clock and event set, so independent
+ *  simulations can run side by side, one per thread.
+ *  <p>
+ *  The event set belongs to the thread that runs the simulation, or until
+ *  it runs, to the thread that created it, and only the owner may
+ *  schedule, reserve, cancel or look at the event set.  Other threads
+ *  post events instead: each of them posts, without locks, to one of a
+ *  few queues, chosen by its thread id so that producers seldom share one,
+ *  and before each batch the owner takes in what has been posted, so it
+ *  merges with the rest in time order.  A posted delay
+ *  counts from the time the simulation had reached when it was posted,
+ *  as of the last batch begun then; if the owner has gone past that
+ *  time by the time it takes the event in, the event happens at the
+ *  time reached instead, so it is never in the past, but when it lands
+ *  depends on how far ahead of the producer the owner runs.  Threads that
+ *  post while the simulation runs should be added as producers, so run()
+ *  waits for them while there is nothing else to do.  Semaphores may be
+ *  used from any thread.
  *  @author Douglas W. Jones
- *  @version 2019-04-29
+ *  @version 2026-10-18
  */
 public class Simulation {
 
     /** The current simulation time, updated before each Action is triggered.
+     *  <p>
+     *  Time is counted in whole ticks, so sums of delays are exact and
+     *  events that should coincide do; what a tick stands for is up to the
+     *  model.
+     */
+    public long time = 0;
+
+    /** The sequence number of the event being triggered, which orders it
+     *  among events at the same time.
      */
-    public static float time = 0.0f;
+    public long seq = 0;
 
     // This interface is so we can schedule events with lambda expressions
     public interface Action {
         void trigger();
     }
 
-    // Events are scheduled on the event set
-    // Event records are also used in semaphore queues
+    /** Interface for handling typed events.
+     *  <p>
+     *  Typed events carry three ints instead of an Action, so scheduling
+     *  them allocates nothing; the dispatcher decides what each kind means.
+     */
+    public interface Dispatcher {
+        void dispatch( int kind, int target, int value );
+    }
+
+    // Where typed events go when they are triggered
+    private Dispatcher dispatcher = null;
+
+    /** Set the dispatcher for typed events.
+     *  @param d the dispatcher
+     */
+    public void setDispatcher( Dispatcher d ) {
+        dispatcher = d;
+    }
+
+    // What to do when every event at one time has been triggered, or null
+    private Action tickEnd = null;
+
+    /** Set an Action to trigger whenever the events at one time are over.
+     *  <p>
+     *  The events at each time are taken from the event set as one batch,
+     *  and the Action follows the last of them, so a model can gather up
+     *  what they change and act on it once.  Events it schedules with no
+     *  delay make a new batch at the same time.
+     *  @param a the Action, or null for none
+     */
+    public void setTickEnd( Action a ) {
+        tickEnd = a;
+    }
+
+    // Event records are used in semaphore queues, and to post events from
+    // other threads; act is null for typed events
     private static class Event {
-        final float time;
+        final long time;
         final Action act;
+        final int kind;
+        final int target;
+        final int value;
 
-        Event( float t, Action a ) {
+        Event( long t, Action a ) {
             time = t;
             act = a;
+            kind = 0;
+            target = 0;
+            value = 0;
+        }
+
+        Event( long t, int k, int tg, int v ) {
+            time = t;
+            act = null;
+            kind = k;
+            target = tg;
+            value = v;
         }
     }
 
+    // The thread that owns the event set
+    private volatile Thread owner = Thread.currentThread();
+
+    // The time the owner has reached, for posted events to count from
+    private final AtomicLong reached = new AtomicLong();
+
+    // The producers that may still post, and whether the owner is parked
+    // waiting for them
+    private final AtomicInteger producers = new AtomicInteger();
+    private volatile boolean waiting = false;
+
+    // The queues of posted events, a power of two of them, at least as
+    // many as processors; each thread posts to the one its id selects, so
+    // its events stay in the order posted, and there are never more queues
+    // however many threads come and go
+    private final List <ConcurrentLinkedQueue <Event>> posts = shards();
+
+    // Whether any posted event may be waiting to be taken in
+    private volatile boolean posted = false;
+
+    // Make the queues of posted events
+    private static List <ConcurrentLinkedQueue <Event>> shards() {
+        final int n = Integer.highestOneBit(
+            Runtime.getRuntime().availableProcessors() * 2 - 1
+        );
+        final List <ConcurrentLinkedQueue <Event>> s = new ArrayList <> ();
+        for (int i = 0; i < n; i++) s.add( new ConcurrentLinkedQueue <> () );
+        return s;
+    }
+
     // The central organizing data structure of the simulation
-    private static final PriorityQueue <Event> eventSet
-            = new PriorityQueue <> (
-                    ( Event e1, Event e2 ) -> Float.compare( e1.time, e2.time )
-    );
+    private EventSet eventSet = new HeapEventSet();
+
+    // Set when run() should return at the end of the current batch
+    private volatile boolean stopping = false;
+
+    /** Select the event set implementation.
+     *  <p>
+     *  This must be done before any events are scheduled.
+     *  @param s the new, empty, event set
+     */
+    public void setEventSet( EventSet s ) {
+        if (!eventSet.isEmpty()) {
+            throw new java.lang.Error(
+                    "Event set must not be changed once events are scheduled."
+            );
+        }
+        eventSet = s;
+    }
+
+    /** The event set, for saving and restoring the pending events.
+     *  @return the event set
+     */
+    public EventSet eventSet() {
+        return eventSet;
+    }
 
     /** Schedule a new event
      *  @param delay the time interval before the Action should be triggered
      *  @param a the Action that should be triggered after that delay
      *  A typical call will look like this
-     *  Simulation.schedule( someDelay, ()->codeToRun( params ) );
+     *  sim.schedule( someDelay, ()->codeToRun( params ) );
      *  That is, the Action will be constructed by a lambda expression
+     *  Only the owner of the event set may call this; see post().
+     */
+    public void schedule( long delay, Action a ) {
+        eventSet.add( time + delay, a );
+    }
+
+    /** Schedule a new typed event
+     *  @param delay the time interval before the event should be dispatched
+     *  @param kind the kind of event
+     *  @param target the target of the event, typically an index
+     *  @param value the value carried by the event
+     *  A typical call will look like this
+     *  sim.schedule( someDelay, KIND, this.id, someValue );
+     *  When the time comes, the event is passed to the Dispatcher.
+     *  Only the owner of the event set may call this; see post().
+     */
+    public void schedule(
+        long delay, int kind, int target, int value
+    ) {
+        eventSet.add( time + delay, kind, target, value );
+    }
+
+    /** Post a new event, from any thread
+     *  @param delay the time interval before the Action should be triggered,
+     *  counted from the time reached when it is posted
+     *  @param a the Action that should be triggered after that delay
+     *  The owner takes the event into the event set before its next batch.
+     */
+    public void post( long delay, Action a ) {
+        post( new Event( reached.get() + delay, a ) );
+    }
+
+    /** Post a new typed event, from any thread
+     *  @param delay the time interval before the event should be dispatched,
+     *  counted from the time reached when it is posted
+     *  @param kind the kind of event
+     *  @param target the target of the event, typically an index
+     *  @param value the value carried by the event
+     *  The owner takes the event into the event set before its next batch.
+     */
+    public void post( long delay, int kind, int target, int value ) {
+        post( new Event( reached.get() + delay, kind, target, value ) );
+    }
+
+    // Post an event, waking the owner if it waits for producers
+    private void post( Event e ) {
+        final int shard = (int)Thread.currentThread().getId();
+        posts.get( shard & (posts.size() - 1) ).add( e );
+        // Set after the event is in, so the owner can't miss it
+        posted = true;
+        if (waiting) LockSupport.unpark( owner );
+    }
+
+    // Schedule an event from the owner, or post it from any other thread
+    private void scheduleOrPost( long delay, Action a ) {
+        if (Thread.currentThread() == owner) {
+            schedule( delay, a );
+        } else {
+            post( delay, a );
+        }
+    }
+
+    /** Add a producer, a thread that will post events while the simulation
+     *  runs; until it is removed, run() waits for it instead of returning
+     *  when there is nothing else to do.
+     *  <p>
+     *  This may be called from any thread, and should be called before the
+     *  producer starts, so run() can't end before it posts anything.
+     */
+    public void addProducer() {
+        producers.incrementAndGet();
+    }
+
+    /** Remove a producer, once it has posted its last event.
+     *  <p>
+     *  This may be called from any thread.
+     */
+    public void removeProducer() {
+        producers.decrementAndGet();
+        LockSupport.unpark( owner );
+    }
+
+    // Take in the posted events, first waiting for producers while there
+    // are no events and no stop; true if there is a batch to run
+    private boolean more() {
+        takeIn();
+        while (eventSet.isEmpty() && (producers.get() > 0) && !stopping) {
+            // Dekker style: set waiting, then look again, so a post either
+            // is seen here or sees waiting and unparks this thread
+            waiting = true;
+            takeIn();
+            if (eventSet.isEmpty() && (producers.get() > 0) && !stopping) {
+                LockSupport.park( this );
+            }
+            waiting = false;
+            takeIn();
+        }
+        return !eventSet.isEmpty() && !stopping;
+    }
+
+    // Add the posted events to the event set, none in the past
+    private void takeIn() {
+        reached.lazySet( time );
+        if (!posted) return;
+        posted = false;
+        for (ConcurrentLinkedQueue <Event> q: posts) {
+            Event e;
+            while ((e = q.poll()) != null) {
+                final long t = Math.max( e.time, time );
+                if (e.act != null) {
+                    eventSet.add( t, e.act );
+                } else {
+                    eventSet.add( t, e.kind, e.target, e.value );
+                }
+            }
+        }
+    }
+
+    /** Take a sequence number for an event that may be scheduled later
+     *  @return the number, which orders the event as though scheduled now
+     */
+    public long reserve() {
+        return eventSet.reserve();
+    }
+
+    /** Schedule a typed event that may be cancelled
+     *  @param t the time at which the event should be dispatched
+     *  @param sq the sequence number, from reserve()
+     *  @param kind the kind of event
+     *  @param target the target of the event, typically an index
+     *  @param value the value carried by the event
+     *  @return a handle for cancelling the event, valid until it happens
+     */
+    public int scheduleAt(
+        long t, long sq, int kind, int target, int value
+    ) {
+        return eventSet.add( t, sq, kind, target, value );
+    }
+
+    /** Cancel a pending event
+     *  @param handle the handle from scheduleAt()
      */
-    public static void schedule( float delay, Action a ) {
-        eventSet.add( new Event( time + delay, a ) );
+    public void cancel( int handle ) {
+        eventSet.cancel( handle );
     }
 
     /** Provide for synchronization between logical processes.
@@ -52,28 +324,39 @@ public class Simulation {
      *  A logical process is a sequence of events where each event
      *  in the sequence causes the next, either by scheduling it or
      *  by waiting on a semaphore, which will schedule it later.
+     *  <p>
+     *  Semaphores may be used from any thread, without locks; the events
+     *  they release are scheduled by the owner and posted by the others.
      */
     public static class Semaphore {
 
-        // Every Semaphore has a non-negative count and a queue of events
-        private int count = 0;
-        private final LinkedList <Event> queue
-                    = new LinkedList <> ();
+        // The simulation whose events wait on this semaphore
+        private final Simulation sim;
+
+        // Every Semaphore has a count and a queue of events
+        private final AtomicInteger count;
+        private final ConcurrentLinkedQueue <Event> queue
+                    = new ConcurrentLinkedQueue <> ();
 
-        // Initially, both q.isEmpty() == true and count == 0;
-        // When count > 0 it must be the case that q.isEmpty() == true, and
-        // When q.isEmpty() == false it must be the case that count == 0.
+        // When count >= 0 it is the number of free resources, and no event
+        // is waiting; when count < 0, -count events are waiting.  A wait()
+        // counts its event before queueing it, so a signal() may find the
+        // queue empty; it then leaves a release in released, and whichever
+        // of the two comes last matches it with the event, so neither waits.
+        private final AtomicInteger released = new AtomicInteger();
 
         /** Create a new semaphore with an empty queue and the given count.
+         *  @param s the simulation that the semaphore belongs to
          *  @param c the non-negative initial value of the semaphore's count.
          */
-        public Semaphore( int c ) {
+        public Semaphore( Simulation s, int c ) {
             if (c < 0) {
                 throw new java.lang.Error(
                         "Semaphore must not be created with a negative count."
                 );
             }
-            count = c;
+            sim = s;
+            count = new AtomicInteger( c );
         }
 
         /** Claim a resource and schedule a new event when the claim succeeds.
@@ -85,40 +368,104 @@ public class Simulation {
          *  it will either be scheduled immediately, if the count permits,
          *  or it will be scheduled later, by a call to s.signal().
          */
-        public void wait( float delay, Action a ) {
-            if (count > 0) {
-                count = count - 1;
-                schedule( delay, a );
+        public void wait( long delay, Action a ) {
+            if (count.getAndDecrement() > 0) {
+                sim.scheduleOrPost( delay, a );
             } else {
                 queue.add( new Event( delay, a ) );
+                match();
             }
         }
 
         /** Release a resource and schedule any event that was waiting for it.
          */
         public void signal() {
-            if (queue.isEmpty()) {
-                count = count + 1;
-            } else {
-                Event e = queue.remove();
-                schedule( e.time, e.act );
+            if (count.getAndIncrement() >= 0) return;
+            released.incrementAndGet();
+            match();
+        }
+
+        // Schedule queued events for the releases left, while there are both
+        private void match() {
+            while ((released.get() > 0) && !queue.isEmpty()) {
+                final int r = released.get();
+                if ((r == 0) || !released.compareAndSet( r, r - 1 )) continue;
+                final Event e = queue.poll();
+                if (e == null) {
+                    // Another thread took it; give the release back
+                    released.incrementAndGet();
+                } else {
+                    sim.scheduleOrPost( e.time, e.act );
+                }
             }
         }
     }
 
     /** Run a simulation.
      *  Call this after scheduling at least one event.
-     *  The simulation will run until either there are no more events or
-     *  some event terminates the program.
+     *  The simulation will run until either there are no more events and
+     *  no producers, some event terminates the program, or stop() is called.
      *  From this point on, a typical simulation program will be event driven
      *  with the ordering of computations determined by chronological ordering
      *  of scheduled events.
+     *  The thread that calls this becomes the owner of the event set.
+     */
+    public void run() {
+        owner = Thread.currentThread();
+        while (more()) batch();
+        stopping = false;
+    }
+
+    /** Run a simulation up to some time.
+     *  <p>
+     *  This stops before the first event at or after that time, or sooner,
+     *  as run() does; run() carries on from there.
+     *  @param until the time
      */
-    public static void run() {
-        while (!eventSet.isEmpty()) {
-            Event e = eventSet.remove();
-            time = e.time;
-            e.act.trigger();
+    public void run( long until ) {
+        owner = Thread.currentThread();
+        while (more() && (eventSet.time( eventSet.first() ) < until)) {
+            batch();
         }
+        stopping = false;
+    }
+
+    /** Make run() return once the current batch of events is over.
+     *  <p>
+     *  This may be called from another thread.
+     */
+    public void stop() {
+        stopping = true;
+        LockSupport.unpark( owner );
+    }
+
+    /** Test whether the simulation is over.
+     *  @return true if no events are pending, none posted included
+     */
+    public boolean isOver() {
+        takeIn();
+        return eventSet.isEmpty();
+    }
+
+    // Trigger the batch of events at the earliest time
+    private void batch() {
+        time = eventSet.time( eventSet.first() );
+        do {
+            final int s = eventSet.remove();
+            final Action a = eventSet.action( s );
+            seq = eventSet.seq( s );
+            if (a != null) {
+                eventSet.release( s );
+                a.trigger();
+            } else {
+                final int kind = eventSet.kind( s );
+                final int target = eventSet.target( s );
+                final int value = eventSet.value( s );
+                eventSet.release( s );
+                dispatcher.dispatch( kind, target, value );
+            }
+        } while (!eventSet.isEmpty()
+            && (eventSet.time( eventSet.first() ) == time));
+        if (tickEnd != null) tickEnd.trigger();
     }
 }
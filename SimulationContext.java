@@ -0,0 +1,296 @@
+// SimulationContext.java
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/** Everything that belongs to one simulation of one circuit.
+ *  <p>
+ *  A context owns the gates and wires of its circuit, the netlist they
+ *  compile into, the clock and event set of its Simulation and its error
+ *  reports.  Nothing is shared between contexts, so one program can hold
+ *  many circuits, and independent simulations can run on separate threads.
+ *  <p>
+ *  The body of each subcircuit definition is built in a context of its
+ *  own, which shares the error reports and the definitions of the context
+ *  of the circuit.  An instance of a subcircuit takes a block of gate and
+ *  wire ids, but builds no gates or wires of its own.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Gate
+ *  @see Wire
+ *  @see Netlist
+ *  @see Subcircuit
+ *  @see Simulation
+ *  @see Errors
+ */
+public class SimulationContext {
+
+    /** Where problems with this simulation are reported.
+     */
+    public final Errors errors;
+
+    /** The clock and event set of this simulation.
+     */
+    public final Simulation simulation = new Simulation();
+
+    // All of the gates built in the circuit, in order of gate id, and by
+    // name, with the ports of a subcircuit body, which have no id, by name
+    private final List <Gate> allGates = new ArrayList <> ();
+    private final HashMap <String, Gate> byName = new HashMap <> ();
+
+    // All of the wires built in the circuit, in order of wire id
+    private final List <Wire> allWires = new ArrayList <> ();
+
+    // The instances of subcircuits, in order and by name
+    private final List <Subcircuit.Instance> allInstances = new ArrayList <> ();
+    private final HashMap <String, Subcircuit.Instance> instanceByName
+        = new HashMap <> ();
+
+    // The ids given out to gates and wires, instances included
+    private int gateIds = 0;
+    private int wireIds = 0;
+
+    // The subcircuits defined so far, shared with the subcircuit bodies
+    private final HashMap <String, Subcircuit> definitions;
+
+    // The subcircuit whose body this is, or null for a circuit
+    private final Subcircuit body;
+
+    // Gates and wires selected for tracing, by gate id, {gate} or
+    // {source, destination}
+    private final List <int[]> probes = new ArrayList <> ();
+
+    // The compiled circuit, once there is one
+    private Netlist netlist = null;
+
+    // Whether values may be x and z as well as 0 and 1
+    private boolean fourValued = false;
+
+    /** Construct an empty context, reporting errors to System.err.
+     *  @param prefix the prefix on any error messages
+     */
+    public SimulationContext( String prefix ) {
+        errors = new Errors( prefix );
+        definitions = new HashMap <> ();
+        body = null;
+    }
+
+    /** Construct an empty context.
+     *  @param prefix the prefix on any error messages
+     *  @param err where error messages go
+     */
+    public SimulationContext( String prefix, PrintStream err ) {
+        errors = new Errors( prefix, err );
+        definitions = new HashMap <> ();
+        body = null;
+    }
+
+    /** Construct an empty context for the body of a subcircuit.
+     *  @param outer the context the subcircuit is defined in
+     *  @param s the subcircuit
+     */
+    SimulationContext( SimulationContext outer, Subcircuit s ) {
+        errors = outer.errors;
+        definitions = outer.definitions;
+        fourValued = outer.fourValued;
+        body = s;
+    }
+
+    /** The subcircuit whose body this context holds.
+     *  @return the subcircuit, or null for a whole circuit
+     */
+    Subcircuit body() {
+        return body;
+    }
+
+    /** Allow outsiders to iterate over all the gates.
+     *  @return an Iterator allowing access to gates
+     */
+    public Iterator <Gate> gates() {
+        return allGates.iterator();
+    }
+
+    /** The number of gates, counting those of instances.
+     *  @return the count, the id of the next gate
+     */
+    public int gateCount() {
+        return gateIds;
+    }
+
+    /** Look up a gate by name.
+     *  @param n the name of the gate, possibly null (matches nothing)
+     *  @return the Gate with that name, or null if no match
+     */
+    public Gate findGate( String n ) {
+        if (n == null) return null;
+        return byName.get( n );
+    }
+
+    /** Look up a gate id by name, in the gates or else in the netlist, for
+     *  a netlist loaded from an image has no gates.
+     *  @param n the name of the gate, possibly null (matches nothing)
+     *  @return the gate id, or -1 if no match
+     */
+    public int findId( String n ) {
+        final Gate g = findGate( n );
+        if (g != null) return g.id;
+        if (n == null) return -1;
+        final int dot = n.indexOf( '.' );
+        if (dot > 0) {
+            // A gate of an instance, named within its subcircuit
+            final Subcircuit.Instance i
+                = instanceByName.get( n.substring( 0, dot ) );
+            if (i != null) {
+                final int id
+                    = i.definition.body.findId( n.substring( dot + 1 ) );
+                if (id >= 0) return i.gateBase + id;
+            }
+        }
+        if (netlist == null) return -1;
+        return netlist.find( n );
+    }
+
+    /** Add a newly constructed gate to the list and the index.
+     *  @param g the gate, whose id must be gateCount()
+     */
+    void add( Gate g ) {
+        allGates.add( g );
+        byName.put( g.name, g );
+        gateIds = gateIds + 1;
+    }
+
+    /** Add a port of a subcircuit body to the index, for the gates and
+     *  wires of the body to refer to.
+     *  @param g the port
+     */
+    void addPort( Gate g ) {
+        byName.put( g.name, g );
+    }
+
+    /** Allow outsiders to iterate over the instances of subcircuits.
+     *  @return an Iterator allowing access to the instances
+     */
+    public Iterator <Subcircuit.Instance> instances() {
+        return allInstances.iterator();
+    }
+
+    /** Look up an instance of a subcircuit by name.
+     *  @param n the name of the instance
+     *  @return the instance, or null if no match
+     */
+    Subcircuit.Instance findInstance( String n ) {
+        return instanceByName.get( n );
+    }
+
+    /** Add a new instance of a subcircuit, giving it its gate and wire ids.
+     *  @param i the instance, whose ids must start at gateCount() and
+     *  wireCount()
+     */
+    void add( Subcircuit.Instance i ) {
+        allInstances.add( i );
+        instanceByName.put( i.name, i );
+        gateIds = gateIds + i.definition.gateCount();
+        wireIds = wireIds + i.definition.wireCount();
+    }
+
+    /** Look up a subcircuit by name.
+     *  @param n the name of the subcircuit
+     *  @return the subcircuit, or null if none was defined by that name
+     */
+    Subcircuit findDefinition( String n ) {
+        return definitions.get( n );
+    }
+
+    /** Add a subcircuit, once its body has been built.
+     *  @param s the subcircuit
+     */
+    void add( Subcircuit s ) {
+        definitions.put( s.name, s );
+    }
+
+    /** Allow outsiders to iterate over all the wires.
+     *  @return an Iterator allowing access to wires
+     */
+    public Iterator <Wire> wires() {
+        return allWires.iterator();
+    }
+
+    /** The number of wires, counting those of instances.
+     *  @return the count, the id of the next wire
+     */
+    public int wireCount() {
+        return wireIds;
+    }
+
+    /** Add a newly constructed wire to the list.
+     *  @param w the wire, whose id must be wireCount()
+     */
+    void add( Wire w ) {
+        allWires.add( w );
+        wireIds = wireIds + 1;
+    }
+
+    /** Select a gate, or the wires from a source to a destination, to trace.
+     *  @param probe the gate id, or the source and destination ids
+     */
+    public void addProbe( int[] probe ) {
+        probes.add( probe );
+    }
+
+    /** Allow outsiders to iterate over the probes.
+     *  @return an Iterator allowing access to the probes
+     */
+    public Iterator <int[]> probes() {
+        return probes.iterator();
+    }
+
+    /** Test whether any probes were selected.
+     *  @return true if there are some
+     */
+    public boolean hasProbes() {
+        return !probes.isEmpty();
+    }
+
+    /** Compile all the gates, wires and instances into a netlist.
+     *  <p>
+     *  Call this only after the gates have passed their sanity checks.
+     *  @return the new netlist
+     */
+    public Netlist compile() {
+        netlist = Netlist.compile( this );
+        if (fourValued) netlist.setFourValued();
+        return netlist;
+    }
+
+    /** Use a netlist loaded from an image, instead of compiling gates.
+     *  @param n the netlist
+     */
+    public void load( Netlist n ) {
+        netlist = n;
+        if (fourValued) netlist.setFourValued();
+    }
+
+    /** Simulate with four-valued logic; call this before building the
+     *  circuit, so that input gates may start at x or z.
+     */
+    public void setFourValued() {
+        fourValued = true;
+    }
+
+    /** Test for four-valued logic.
+     *  @return true if values may be x and z as well as 0 and 1
+     */
+    public boolean isFourValued() {
+        return fourValued;
+    }
+
+    /** The compiled circuit.
+     *  @return the netlist, or null if compile() hasn't been called
+     */
+    public Netlist netlist() {
+        return netlist;
+    }
+}
@@ -0,0 +1,217 @@
+// Subcircuit.java
+
+/** A subcircuit, defined once and instanced any number of times.
+ *  <p>
+ *  A definition names the subcircuit and its ports, and its body, up to an
+ *  end command, holds gate, wire and instance commands like those of a
+ *  circuit.  Each instance binds the ports, in order, to gates of the
+ *  circuit or of the body it is in, so the wires of the body from and to a
+ *  port are from and to the gate bound to it.  The other gates of the body
+ *  belong to each instance, named with the name of the instance and a dot
+ *  before their own, as in h.s.
+ *  <p>
+ *  The body is built and checked once, when it is defined.  An instance
+ *  only takes a block of gate and wire ids and adds the wires of the ports
+ *  to the gates bound to them, so reading and checking a regular circuit
+ *  costs in proportion to its distinct parts.  Simulation does not: the
+ *  netlist copies the body into each block when it is compiled, so the
+ *  compiled circuit, and the time to compile it, grow with the total
+ *  number of gates, as for the same circuit written out flat; only the
+ *  names of the copies are shared.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see SimulationContext
+ *  @see Netlist
+ */
+public class Subcircuit {
+
+    /** The name of the subcircuit.
+     */
+    public final String name;
+
+    /** The gates, wires and instances of the body.
+     */
+    final SimulationContext body;
+
+    // The ports, in order, with ids -1, -2 and so on
+    private final Port[] ports;
+
+    // Construct a subcircuit with an empty body
+    private Subcircuit( SimulationContext ctx, String n, String[] portNames ) {
+        name = n;
+        body = new SimulationContext( ctx, this );
+        ports = new Port[portNames.length];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = new Port( portNames[i], i );
+            if (body.findGate( portNames[i] ) != null) {
+                ctx.errors.warn( this + ": port " + portNames[i] + " reused" );
+            }
+            body.addPort( ports[i] );
+        }
+    }
+
+    /** Build a subcircuit from a define command and its body, and add it to
+     *  the definitions.
+     *  @param ctx the context the subcircuit is defined in
+     *  @param sc the scanner used to get the ports and the body
+     *  When called, the keyword "define" has already been scanned.
+     */
+    public static void define( SimulationContext ctx, ByteScanner sc ) {
+        final String name
+            = ScanSupport.scanName( sc, () -> "Define has missing name" );
+        final Subcircuit s
+            = new Subcircuit( ctx, name, ScanSupport.scanNames( sc ) );
+        // The body is built even without a name, to get past it
+        if (!LogicSimulator.buildLogic( s.body, sc )) {
+            ctx.errors.warn( s + ": end missing" );
+        }
+        LogicSimulator.sanityChecks( s.body );
+        if (name == null) return;
+        if (ctx.findDefinition( name ) != null) {
+            ctx.errors.warn( s + ": name reused" );
+            return;
+        }
+        ctx.add( s );
+    }
+
+    /** Build an instance of a subcircuit and add it to a context.
+     *  @param ctx the context the instance belongs to
+     *  @param sc the scanner used to get the attributes of the instance
+     *  When called, the keyword "instance" has already been scanned.
+     */
+    public static void instance( SimulationContext ctx, ByteScanner sc ) {
+        final String name
+            = ScanSupport.scanName( sc, () -> "Instance has missing name" );
+        if (name == null) {
+            ScanSupport.finishLine( sc, () -> "Instance: followed by" );
+            return;
+        }
+        if (ctx.findInstance( name ) != null) {
+            ctx.errors.warn( "Instance " + name + ": name reused" );
+            sc.restOfLine();
+            return;
+        }
+        final String kind = ScanSupport.scanName(
+            sc, () -> "Instance " + name + ": subcircuit missing"
+        );
+        if (kind == null) {
+            ScanSupport.finishLine(
+                sc, () -> "Instance " + name + ": followed by"
+            );
+            return;
+        }
+        final Subcircuit s = ctx.findDefinition( kind );
+        if (s == null) {
+            ctx.errors.warn(
+                "Instance " + name + " " + kind + ": subcircuit undefined"
+            );
+            sc.restOfLine();
+            return;
+        }
+
+        // Bind the ports, in order
+        final String[] names = ScanSupport.scanNames( sc );
+        if (names.length != s.ports.length) {
+            ctx.errors.warn( "Instance " + name + " " + kind + ": "
+                + names.length + " gates for " + s.ports.length + " ports" );
+            return;
+        }
+        final Gate[] bound = new Gate[names.length];
+        for (int i = 0; i < names.length; i++) {
+            bound[i] = ctx.findGate( names[i] );
+            if (bound[i] == null) {
+                ctx.errors.warn( "Instance " + name + " " + kind + " "
+                    + names[i] + ": undefined gate" );
+                return;
+            }
+        }
+        for (int i = 0; i < bound.length; i++) {
+            bound[i].connectPort( s.ports[i] );
+        }
+        ctx.add( new Instance( name, s, ctx.gateCount(), ctx.wireCount(),
+            bound ) );
+    }
+
+    /** The number of gates of an instance, those of its instances included.
+     *  @return the count
+     */
+    int gateCount() {
+        return body.gateCount();
+    }
+
+    /** The number of wires of an instance, those of its instances included.
+     *  @return the count
+     */
+    int wireCount() {
+        return body.wireCount();
+    }
+
+    /** Subcircuit toString() method.
+     */
+    public String toString() {
+        final StringBuilder b = new StringBuilder( "Define " ).append( name );
+        for (Port p: ports) b.append( ' ' ).append( p.name );
+        return b.toString();
+    }
+
+    /** An instance of a subcircuit, in a circuit or in another body.
+     */
+    static class Instance {
+
+        /** The name of the instance.
+         */
+        final String name;
+
+        /** The subcircuit it is an instance of.
+         */
+        final Subcircuit definition;
+
+        /** The ids of its first gate and first wire, in the context it
+         *  belongs to.
+         */
+        final int gateBase;
+        final int wireBase;
+
+        /** The gates its ports are bound to, in the context it belongs to.
+         */
+        final Gate[] bound;
+
+        // Construct an instance
+        private Instance(
+            String n, Subcircuit s, int g, int w, Gate[] b
+        ) {
+            name = n;
+            definition = s;
+            gateBase = g;
+            wireBase = w;
+            bound = b;
+        }
+
+        /** Instance toString() method.
+         */
+        public String toString() {
+            final StringBuilder b = new StringBuilder( "Instance " )
+                .append( name ).append( ' ' ).append( definition.name );
+            for (Gate g: bound) b.append( ' ' ).append( g.name );
+            return b.toString();
+        }
+    }
+
+    // A port of the body, standing for the gate bound to it; the wires of
+    // the body from and to it are counted here, for each instance to add to
+    // that gate
+    private static class Port extends Gate {
+
+        Port( String n, int i ) {
+            super( n, -1 - i );
+        }
+
+        public void sanityCheck( Errors errors ) {
+            // Checked as the gate bound to it
+        }
+
+        void compile( Netlist net ) {
+            // Compiled as the gate bound to it
+        }
+    }
+}
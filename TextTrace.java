@@ -0,0 +1,167 @@
+// TextTrace.java
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Trace sink that writes the traditional text trace.
+ *  <p>
+ *  The output is byte for byte what printing each change with
+ *  System.out.println() used to produce, but it is assembled in a large
+ *  buffer, and the labels of gates and wires are only formatted once.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see TraceSink
+ */
+public class TextTrace extends TraceSink {
+
+    // Size of the output buffer
+    private static final int BUFFER = 1 << 16;
+
+    // The characters of the values 0, 1, x and z
+    private static final byte[] VALUES = { '0', '1', 'x', 'z' };
+
+    private final OutputStream out;
+    private final Netlist net;
+
+    // The output buffer
+    private final byte[] buf = new byte[BUFFER];
+    private int len = 0;
+
+    // Cached labels, as bytes
+    private final byte[][] gateBytes;
+    private final byte[][] wireBytes;
+
+    // Under four-valued logic, the value of each gate and then each wire
+    // before its next change, null when it is simply the other one
+    private final byte[] last;
+
+    // The most recent time, as bytes, with "time " before it
+    private long lastTime = 0;
+    private byte[] timeBytes = null;
+
+    /** Construct a text trace.
+     *  @param o the stream to write to
+     *  @param n the netlist being traced
+     */
+    public TextTrace( OutputStream o, Netlist n ) {
+        out = o;
+        net = n;
+        gateBytes = new byte[n.gates][];
+        wireBytes = new byte[n.wires][];
+        if (n.isFourValued()) {
+            last = new byte[n.gates + n.wires];
+            Arrays.fill( last, (byte)Netlist.X );
+        } else {
+            last = null;
+        }
+    }
+
+    /** Report a change in the output of a gate.
+     *  @param time the simulated time of the change, in ticks
+     *  @param g the gate id
+     *  @param value the new value
+     */
+    public void gateChange( long time, int g, int value ) {
+        if (net.kind( g ) == Netlist.INPUT) {
+            // Input gate labels change as they run, so they are not cached
+            record( time, previous( g, value ), value,
+                bytes( net.gateLabel( g ) ) );
+            return;
+        }
+        if (gateBytes[g] == null) gateBytes[g] = bytes( net.gateLabel( g ) );
+        record( time, previous( g, value ), value, gateBytes[g] );
+    }
+
+    /** Report a change in the output of a wire.
+     *  @param time the simulated time of the change, in ticks
+     *  @param w the wire id
+     *  @param value the new value
+     */
+    public void wireChange( long time, int w, int value ) {
+        if (wireBytes[w] == null) wireBytes[w] = bytes( net.wireLabel( w ) );
+        record( time, previous( net.gates + w, value ), value, wireBytes[w] );
+    }
+
+    /** Write out the buffer, so the trace so far is complete.
+     */
+    public void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            failed( e );
+        }
+    }
+
+    /** Finish the trace, flushing the buffer.
+     */
+    public void close() {
+        flush();
+    }
+
+    // The value before a change of gate or wire i to value
+    private int previous( int i, int value ) {
+        if (last == null) return 1 - value;
+        final int from = last[i];
+        last[i] = (byte)value;
+        return from;
+    }
+
+    // Add one line, "time t from->value label", to the buffer
+    private void record( long time, int from, int value, byte[] label ) {
+        if ((timeBytes == null) || (time != lastTime)) {
+            lastTime = time;
+            timeBytes = bytes( "time " + net.timeString( time ) + " " );
+        }
+        if (len + timeBytes.length + label.length + 5 > BUFFER) drain();
+        put( timeBytes );
+        buf[len] = VALUES[from];
+        buf[len + 1] = '-';
+        buf[len + 2] = '>';
+        buf[len + 3] = VALUES[value];
+        buf[len + 4] = ' ';
+        len = len + 5;
+        put( label );
+        buf[len] = '\n';
+        len = len + 1;
+    }
+
+    // Append bytes to the buffer, which must have room for them
+    private void put( byte[] b ) {
+        if (b.length > BUFFER - len - 1) {
+            // Too big for the buffer, this only happens for huge names
+            drain();
+            write( b, b.length );
+            return;
+        }
+        System.arraycopy( b, 0, buf, len, b.length );
+        len = len + b.length;
+    }
+
+    // Write out the buffer
+    private void drain() {
+        write( buf, len );
+        len = 0;
+    }
+
+    // Write out n bytes of b
+    private void write( byte[] b, int n ) {
+        try {
+            out.write( b, 0, n );
+        } catch (IOException e) {
+            failed( e );
+        }
+    }
+
+    // The bytes of a string
+    private static byte[] bytes( String s ) {
+        return s.getBytes( StandardCharsets.UTF_8 );
+    }
+
+    // Report a failure to write the trace
+    private void failed( IOException e ) {
+        net.errors().fatal( "Can't write the trace: " + e.getMessage() );
+    }
+}
@@ -1,10 +1,8 @@
 // ThresholdGate.java
 
-import java.util.Scanner;
-
 /** Threshold logic gates
  *  @author Piotr Smietana
- *  @version 2019-04-03
+ *  @version 2026-10-18
  *  @see Gate
  */
 public class ThresholdGate extends InputCountGate {
@@ -12,21 +10,23 @@ public class ThresholdGate extends InputCountGate {
     private int threshold = 0;
 
     /** Constructor, used only from within subclasses.
+     *  @param ctx the context the gate belongs to
      *  @param sc the scanner
      *  @param name the name of the new gate
      */
-    public ThresholdGate( Scanner sc, String name ){
-        super( name );
+    public ThresholdGate( SimulationContext ctx, ByteScanner sc, String name ){
+        super( ctx, name );
         threshold = ScanSupport.scanPositiveInt( sc, () -> this.toString() );
         delay = ScanSupport.scanPositiveFloat( sc, () -> this.toString() );
         ScanSupport.finishLine( sc, () -> this + ": followed by" );
     }
 
     /** Every subclass of gate offers a sanity check.
+     *  @param errors where failures are reported
      */
-    public void sanityCheck() {
+    public void sanityCheck( Errors errors ) {
         if (threshold > inCount) {
-            Errors.warn( this.toString() + ": has threshold > input wires" );
+            errors.warn( this.toString() + ": has threshold > input wires" );
         }
     }
 
@@ -36,14 +36,10 @@ public class ThresholdGate extends InputCountGate {
         return super.toString() + " threshold " + threshold + " " + delay;
     }
 
-    /** Compute the gate's logical value.
-     *  <p>
-     *  Each subclass must implement this method.
-     *  @param count the number of ones on the input
-     *  @return logic value
+    /** Record this gate's attributes in the netlist.
+     *  @param net the netlist being compiled
      */
-    public int logicRule( int count ) {
-        if (count >= threshold) return 1;
-        return 0;
+    void compile( Netlist net ) {
+        net.setGate( id, name, Netlist.THRESHOLD, delay, threshold, 0 );
     }
 }
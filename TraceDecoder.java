@@ -0,0 +1,93 @@
+// TraceDecoder.java
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** Main program that turns a binary trace back into the text trace.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see BinaryTrace
+ *  @see TextTrace
+ */
+public class TraceDecoder {
+
+    /** Decode a binary trace into the text trace.
+     *  @param in the stream holding the binary trace
+     *  @param out the stream to write the text trace to
+     *  @param errors where problems with the binary trace are reported
+     *  @throws IOException if the binary trace can't be read
+     */
+    public static void decode(
+        DataInputStream in, OutputStream out, Errors errors
+    ) throws IOException {
+        if (in.readInt() != BinaryTrace.MAGIC) {
+            errors.fatal( "Not a binary trace" );
+        }
+        if (in.readInt() != BinaryTrace.VERSION) {
+            errors.fatal( "Binary trace version unsupported" );
+        }
+        final Netlist net = Netlist.read( in, errors );
+        final TraceSink sink = new TextTrace( out, net );
+        for (;;) {
+            final int tag = in.read();
+            if (tag < 0) break;
+            final int id = in.readInt();
+            final long time = in.readLong();
+            final int value = in.readByte();
+            if (tag == BinaryTrace.GATE) {
+                if (net.kind( id ) == Netlist.INPUT) {
+                    net.setChangesLeft( id, in.readInt() );
+                }
+                sink.gateChange( time, id, value );
+            } else if (tag == BinaryTrace.WIRE) {
+                sink.wireChange( time, id, value );
+            } else {
+                errors.fatal( "Record tag " + tag + ": unknown" );
+            }
+        }
+        sink.close();
+    }
+
+    /** Main method.
+     *  <p>
+     *  Usage: java TraceDecoder file
+     *  where file holds a binary trace; the text trace goes to System.out.
+     *  @param args the command line arguments
+     */
+    public static void main( String[] args ) {
+        try {
+            decode( args );
+        } catch( Errors.FatalError e ) {
+            System.exit( 1 );
+        }
+    }
+
+    // Decode the file named in the command line arguments
+    private static void decode( String[] args ) {
+        final Errors errors = new Errors( "Tracedecoder" );
+        if (args.length < 1) {
+            errors.fatal( "Missing argument" );
+        } else if (args.length > 1) {
+            errors.warn( "Extra arguments" );
+        }
+        try {
+            decode(
+                new DataInputStream( new BufferedInputStream(
+                    new FileInputStream( args[0] ), 1 << 16
+                ) ),
+                System.out, errors
+            );
+        } catch( FileNotFoundException e ) {
+            errors.fatal( "Can't open the file" );
+        } catch( EOFException e ) {
+            errors.fatal( "Binary trace truncated" );
+        } catch( IOException e ) {
+            errors.fatal( "Can't read the file: " + e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,45 @@
+// TraceSink.java
+
+/** Where the simulation reports changes to the outputs of gates and wires.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see Netlist
+ *  @see TextTrace
+ *  @see BinaryTrace
+ */
+public abstract class TraceSink {
+
+    /** A sink that discards everything.
+     */
+    public static final TraceSink NULL = new TraceSink() {
+        public void gateChange( long time, int g, int value ) {}
+        public void wireChange( long time, int w, int value ) {}
+    };
+
+    /** Report a change in the output of a gate.
+     *  @param time the simulated time of the change, in ticks
+     *  @param g the gate id
+     *  @param value the new value
+     */
+    public abstract void gateChange( long time, int g, int value );
+
+    /** Report a change in the output of a wire.
+     *  @param time the simulated time of the change, in ticks
+     *  @param w the wire id
+     *  @param value the new value
+     */
+    public abstract void wireChange( long time, int w, int value );
+
+    /** Write out anything that has been buffered, so that the trace so far
+     *  is complete.
+     */
+    public void flush() {
+        // By default, there is nothing to do
+    }
+
+    /** Finish the trace, flushing anything that has been buffered.
+     */
+    public void close() {
+        // By default, there is nothing to do
+    }
+}
@@ -0,0 +1,290 @@
+// VcdTrace.java
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Exchanger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/** Trace sink that writes a Value Change Dump, for waveform viewers.
+ *  <p>
+ *  Every traced gate and wire is declared as a one bit signal with a short
+ *  identifier code, and the changes follow grouped under their time, in
+ *  ticks, with a timescale that makes the time unit one second.  The dump
+ *  is assembled in one buffer while a writer thread writes out, and
+ *  optionally compresses, the other, so the simulation does not wait for
+ *  the disk unless the disk falls behind.
+ *  @author Piotr Smietana
+ *  @version 2026-10-18
+ *  @see TraceSink
+ */
+public class VcdTrace extends TraceSink {
+
+    // Size of each of the two buffers
+    private static final int BUFFER = 1 << 16;
+
+    // The timescale of each number of decimal places in a tick
+    private static final String[] SCALES = {
+        "1 s", "100 ms", "10 ms", "1 ms", "100 us", "10 us", "1 us",
+        "100 ns", "10 ns", "1 ns"
+    };
+
+    // What the writer thread does after writing a buffer
+    private static final int WRITE = 0;
+    private static final int FLUSH = 1;
+    private static final int FINISH = 2;
+
+    // A buffer, passed back and forth between the two threads
+    private static class Chunk {
+        final byte[] bytes = new byte[BUFFER];
+        int length = 0;
+        int then = WRITE;
+    }
+
+    private final Netlist net;
+
+    // The stream the writer thread writes to, and the compressor in it
+    private final OutputStream out;
+    private final GZIPOutputStream gzip;
+
+    // The buffer being filled, and where full ones are swapped for empty
+    private Chunk chunk = new Chunk();
+    private final Exchanger <Chunk> exchanger = new Exchanger <> ();
+    private final Thread writer;
+
+    // The first failure of the writer thread, reported by this one
+    private volatile IOException failure = null;
+
+    // The identifier codes of the gates, then of the wires, null for any
+    // not traced; none until the header is written
+    private byte[][] code = null;
+
+    // The time of the most recent change
+    private long lastTime = -1;
+
+    private boolean closed = false;
+
+    /** Construct a VCD trace, and start its writer thread.
+     *  @param o the stream to write to
+     *  @param n the netlist being traced
+     *  @param compress true to compress the dump with gzip
+     */
+    public VcdTrace( OutputStream o, Netlist n, boolean compress ) {
+        net = n;
+        GZIPOutputStream z = null;
+        if (compress) {
+            try {
+                z = new GZIPOutputStream( o, BUFFER ) {
+                    {
+                        // Dumps are repetitive, the fastest level does well
+                        def.setLevel( Deflater.BEST_SPEED );
+                    }
+                };
+            } catch (IOException e) {
+                failed( e );
+            }
+        }
+        gzip = z;
+        out = (z == null) ? o : z;
+        writer = new Thread( this::writeChunks, "VCD writer" );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+    /** Report a change in the output of a gate.
+     *  @param time the simulated time of the change, in ticks
+     *  @param g the gate id
+     *  @param value the new value
+     */
+    public void gateChange( long time, int g, int value ) {
+        change( time, g, value );
+    }
+
+    /** Report a change in the output of a wire.
+     *  @param time the simulated time of the change, in ticks
+     *  @param w the wire id
+     *  @param value the new value
+     */
+    public void wireChange( long time, int w, int value ) {
+        change( time, net.gates + w, value );
+    }
+
+    /** Write out both buffers, so the dump so far is complete.
+     */
+    public void flush() {
+        if (closed) return;
+        hand( FLUSH );
+        // The writer takes this once it has written and flushed the last
+        hand( WRITE );
+    }
+
+    /** Finish the dump, and wait for the writer thread to write it out.
+     */
+    public void close() {
+        if (closed) return;
+        if (code == null) header();
+        hand( FINISH );
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) failed( failure );
+    }
+
+    // Add a change of gate or wire i, starting a new time if need be
+    private void change( long time, int i, int value ) {
+        if (code == null) header();
+        final byte[] c = code[i];
+        if (c == null) return;
+        if (time != lastTime) {
+            lastTime = time;
+            put( "#" + time + "\n" );
+        }
+        if (chunk.length + c.length + 2 > BUFFER) hand( WRITE );
+        final byte[] b = chunk.bytes;
+        int n = chunk.length;
+        b[n] = (byte)Netlist.valueName( value );
+        n = n + 1;
+        for (byte x: c) {
+            b[n] = x;
+            n = n + 1;
+        }
+        b[n] = '\n';
+        chunk.length = n + 1;
+    }
+
+    // Declare the traced gates and wires, all of them 0 at first, or x
+    // under four-valued logic
+    private void header() {
+        code = new byte[net.gates + net.wires][];
+        int places = 0;
+        for (long u = net.ticksPerUnit(); u > 1; u = u / 10) {
+            places = places + 1;
+        }
+        put( "$version LogicSimulator $end\n" );
+        put( "$timescale " + SCALES[places] + " $end\n" );
+        put( "$scope module circuit $end\n" );
+        int k = 0;
+        for (int g = 0; g < net.gates; g++) {
+            if (!net.gateTraced( g ) || (net.kind( g ) == Netlist.OUTPUT)) {
+                continue;
+            }
+            code[g] = identifier( k );
+            k = k + 1;
+            declare( code[g], net.name( g ) );
+        }
+        for (int w = 0; w < net.wires; w++) {
+            if (!net.wireTraced( w )) continue;
+            code[net.gates + w] = identifier( k );
+            k = k + 1;
+            declare( code[net.gates + w], wireName( w ) );
+        }
+        put( "$upscope $end\n$enddefinitions $end\n#0\n$dumpvars\n" );
+        final String initial = net.isFourValued() ? "x" : "0";
+        for (byte[] c: code) {
+            if (c == null) continue;
+            put( initial );
+            put( c );
+            put( "\n" );
+        }
+        put( "$end\n" );
+        lastTime = 0;
+    }
+
+    // Declare one signal
+    private void declare( byte[] c, String name ) {
+        put( "$var wire 1 " );
+        put( c );
+        put( " " + name + " $end\n" );
+    }
+
+    // The name of a wire, source->destination, numbered from the second
+    // of several wires between the same gates
+    private String wireName( int w ) {
+        final int src = net.wireSource( w );
+        final int dst = net.wireDestination( w );
+        int same = 1;
+        for (int i = 0; i < net.fanOut( src ); i++) {
+            final int v = net.fanWire( src, i );
+            if (v >= w) break;
+            if (net.wireDestination( v ) == dst) same = same + 1;
+        }
+        final String name = net.name( src ) + "->" + net.name( dst );
+        return (same == 1) ? name : name + "_" + same;
+    }
+
+    // The k-th identifier code, in base 94 using the printable characters
+    private static byte[] identifier( int k ) {
+        int digits = 1;
+        for (int i = k / 94; i > 0; i = i / 94) digits = digits + 1;
+        final byte[] c = new byte[digits];
+        for (int i = digits - 1; i >= 0; i--) {
+            c[i] = (byte)('!' + k % 94);
+            k = k / 94;
+        }
+        return c;
+    }
+
+    // Append a string to the buffers
+    private void put( String s ) {
+        put( s.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    // Append bytes to the buffers, handing over each one that fills up
+    private void put( byte[] b ) {
+        int i = 0;
+        while (i < b.length) {
+            if (chunk.length == BUFFER) hand( WRITE );
+            final int n = Math.min( b.length - i, BUFFER - chunk.length );
+            System.arraycopy( b, i, chunk.bytes, chunk.length, n );
+            chunk.length = chunk.length + n;
+            i = i + n;
+        }
+    }
+
+    // Hand the buffer being filled to the writer thread, and take back the
+    // one it wrote before
+    private void hand( int then ) {
+        chunk.then = then;
+        try {
+            chunk = exchanger.exchange( chunk );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed( new InterruptedIOException( "interrupted" ) );
+        }
+        chunk.length = 0;
+        if (failure != null) failed( failure );
+    }
+
+    // The writer thread, writing out each buffer it is handed until the
+    // dump is finished; after a failure it only hands buffers back
+    private void writeChunks() {
+        Chunk c = new Chunk();
+        try {
+            do {
+                c = exchanger.exchange( c );
+                if (failure != null) continue;
+                try {
+                    out.write( c.bytes, 0, c.length );
+                    if ((c.then == FINISH) && (gzip != null)) {
+                        gzip.finish();
+                    }
+                    if (c.then != WRITE) out.flush();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            } while (c.then != FINISH);
+        } catch (InterruptedException e) {
+            // Abandoned
+        }
+    }
+
+    // Report a failure to write the trace
+    private void failed( IOException e ) {
+        net.errors().fatal( "Can't write the trace: " + e.getMessage() );
+    }
+}
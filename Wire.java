@@ -1,47 +1,35 @@
 // Wire.java
 
-import java.util.Iterator;
-import java.util.List;
-import java.util.LinkedList;
-import java.util.Scanner;
-
 /** Wires connect Gates.
  *  @author Piotr Smietana
- *  @version 2019-04-29
+ *  @version 2026-10-18
  *  @see Gate
  */
 public class Wire {
 
-    // List of all of the wires in the universe
-    private static final List <Wire> allWires = new LinkedList <> ();
-
-    /** Allow outsiders to iterate over all the wires
-     *  @return an Iterator allowing access to wires
-     */
-    public static Iterator <Wire> iterator() {
-        return allWires.iterator();
-    }
-
     // Attributes of each Wire
     private final Gate source;
     private final Gate destination;
     private final float delay;
+    private final int id;
 
     // Construct a new Wire
-    private Wire( Gate src, Gate dst, Float del ) {
+    private Wire( SimulationContext ctx, Gate src, Gate dst, Float del ) {
         source = src;
         destination = dst;
         delay = del;
+        id = ctx.wireCount();
     }
 
-    /** Build a new Gate and add it to the list of gates.
+    /** Build a new Wire and add it to the list of wires.
+     *  @param ctx the context the wire belongs to
      *  @param sc the scanner used to get the attributes of this wire
      *  @param src the source gate, guaranteed non null
      *  When called, the keyword "wire" and the name of the source gate
      *  have already been scanned, so we are ready to scan the delay and
      *  destination.
      */
-    public static void make( Scanner sc, Gate src ) {
+    public static void make( SimulationContext ctx, ByteScanner sc, Gate src ) {
         // Wire's delay and destination, until constructor call
         final Float delay
              = ScanSupport.scanPositiveFloat( sc, () -> "wire " + src.name );
@@ -50,46 +38,32 @@ public class Wire {
         );
         // All scanning is done now, may return at any time to avoid making wire
         if (dstName == null) return;
-        Gate dst = Gate.findGate( dstName );
+        Gate dst = ctx.findGate( dstName );
         if (dst == null) {
-            Errors.warn(
+            ctx.errors.warn(
             "Wire " + src.name + " " + delay + " " + dstName
             + ": undefined destination"
             );
             return;
         }
         // Make the wire
-        Wire w = new Wire( src, dst, delay );
+        Wire w = new Wire( ctx, src, dst, delay );
         // Now we can actually connect the source and destination gates
         src.connectFrom( w );
         dst.connectTo( w );
-        allWires.add( w );
+        ctx.add( w );
     }
 
-    /** Wire toString() method.
+    /** Record this wire's attributes in the netlist.
+     *  @param net the netlist being compiled
      */
-    public String toString() {
-        return "Wire " + source.name + ' ' + delay + ' ' + destination.name;
+    void compile( Netlist net ) {
+        net.setWire( id, source.id, destination.id, delay );
     }
 
-    // Simulation methods
-
-    /** Tell the wire that its input has changed.
-     *  @param value the new value of that input
-     */
-    public void inputChange( int value ) {
-        Simulation.schedule(
-            delay, () -> this.outputChange( value )
-        );
-    }
-
-    /** Actually change the output.
+    /** Wire toString() method.
      */
-    private void outputChange( int value ) {
-        final int comp = 1 - value;
-        System.out.println(
-            "time " + Simulation.time + " " + comp + "->" + value + " " + this
-        );
-        destination.inputChange( value );
+    public String toString() {
+        return "Wire " + source.name + ' ' + delay + ' ' + destination.name;
     }
 }
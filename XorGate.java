@@ -1,29 +1,29 @@
 // XorGate.java
 
-import java.util.Scanner;
-
 /** Exclusive Or gates
  *  @author Piotr Smietana
- *  @version 2019-04-03
+ *  @version 2026-10-18
  *  @see Gate
  */
 public class XorGate extends InputCountGate {
 
     /** Constructor, used only from within subclasses.
+     *  @param ctx the context the gate belongs to
      *  @param sc the scanner
      *  @param name the name of the new gate
      */
-    public XorGate( Scanner sc, String name ){
-        super( name );
+    public XorGate( SimulationContext ctx, ByteScanner sc, String name ){
+        super( ctx, name );
         delay = ScanSupport.scanPositiveFloat( sc, () -> this.toString() );
         ScanSupport.finishLine( sc, () -> this + ": followed by" );
     }
 
     /** Every subclass of gate offers a sanity check.
+     *  @param errors where failures are reported
      */
-    public void sanityCheck() {
+    public void sanityCheck( Errors errors ) {
         if (inCount != 2) {
-            Errors.warn( this.toString() + ": input wire count must be two" );
+            errors.warn( this.toString() + ": input wire count must be two" );
         }
     }
 
@@ -33,13 +33,10 @@ public class XorGate extends InputCountGate {
         return super.toString() + " xor " + delay;
     }
 
-    /** Compute the gate's logical value.
-     *  <p>
-     *  Each subclass must implement this method.
-     *  @param count the number of ones on the input
-     *  @return logic value
+    /** Record this gate's attributes in the netlist.
+     *  @param net the netlist being compiled
      */
-    public int logicRule( int count ) {
-        return count % 2;
+    void compile( Netlist net ) {
+        net.setGate( id, name, Netlist.XOR, delay, 0, 0 );
     }
 }